@@ -1,119 +1,93 @@
-import javafx.util.Pair;
-
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.StringTokenizer;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Created by Katerina Intzevidou on 27-Jun-17.
  * Email: <aintzevi@csd.auth.gr> <intz.katerina@gmail.com>
  */
 public class Evaluation {
+    // Lines at the start of a geneClass file that contain no assignment
+    private static final int HEADER_LINES = 13;
+
     public static void main(String[] args) {
         // Object to handle the input directory
         File folder = new File("C:\\Users\\aintzevi\\Desktop\\proj\\Eval");
 
-        computeEvaluationPerMethod(folder);
+        computeEvaluationPerMethod(folder, new File(".\\output\\EvaluationResult.txt"),
+                Runtime.getRuntime().availableProcessors());
     }
 
     /**
-     * Reads raw data from the input file
-     * @param inputFilename filename of input file - absolute path - file coming from geneClass application. .csv
-     * @return List containing the raw lines in String form in each of its entries
+     * Evaluates the efficiency of the method assuming the group in which an individual belongs, in one pass over the file
+     * coming from geneClass, without keeping its lines. Every line after the header is "/assumed;actual;...": the initial
+     * / of the assumed group is dropped and the digits of both groups are ignored while comparing them
+     * @param inputFile file coming from geneClass application. .csv
+     * @return the number of individuals put into the correct group and the number of individuals
+     * @throws IOException if the file cannot be read or a line has less than two values
      */
-    private static List<String> getRawLinesFromFile(String inputFilename) {
-        File inputFile = new File(inputFilename);       // Create a file handle on the filename of the input
-        String line;        // Line of file string
-        List<String> listOfFileLines = new ArrayList<>();       // List to store raw data
-
-        BufferedReader reader = null;       // Create buffered reader
-
-        try {
-            // Connect reader with input file
-            reader = new BufferedReader(new FileReader(inputFile));
-
-            // Init currentLine variable to empty string
-            line = "";
-            // While there still are lines in the file to read
-            while (line != null) {
-                // Add in list
-                listOfFileLines.add(line);
-                // Read the next currentLine, store in variable currentLine
-                line = reader.readLine();
-            }
-
-            // Close reader after it has been read
-            reader.close();
-        } catch (IOException e) {
-            System.out.println("Buffered reader init failed");
-            e.printStackTrace();
-        }
-        finally {
-            // Closing the reader
-            try {
-                // Checking if the reader is still open
-                if (reader != null)
-                    // If so, close it
-                    reader.close();
-            } catch (IOException ex) {
-                System.out.println("Error closing buffered reader");
-                ex.printStackTrace();
+    private static Score computeEvaluation(File inputFile) throws IOException {
+        Score score = new Score();
+        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                if (++lineNumber <= HEADER_LINES)
+                    continue;
+
+                // Tokens as StringTokenizer gives them, empty ones skipped
+                int assumedStart = skipSeparators(line, 0);
+                // Line without assignment
+                if (assumedStart == line.length())
+                    continue;
+                int assumedEnd = endOfToken(line, assumedStart);
+                int actualStart = skipSeparators(line, assumedEnd);
+                if (actualStart == line.length())
+                    throw new IOException("Not an assignment line " + lineNumber + " of " + inputFile + ": " + line);
+                int actualEnd = endOfToken(line, actualStart);
+
+                // Removing the initial / of the assumed group
+                if (equalWithoutDigits(line, assumedStart + 1, assumedEnd, actualStart, actualEnd))
+                    score.correct++;
+                score.total++;
             }
         }
-        return listOfFileLines;     // Return list with raw data
+        return score;
     }
 
     /**
-     * Turns raw data to usable form - Creates pairs with the assumed group and the actual group of the SNPs
-     * @param inputListOfLines List containing the raw data - first 14 lines are not useful here
-     * @return List containing pairs with the assumed value as key and the actual value as value
+     * Helper function, compares two parts of a line ignoring the digits in them, the same as comparing them after
+     * replaceAll("\\d", "")
      */
-    private static List<Pair<String, String>> lineListToListOfPairs(List<String> inputListOfLines) {
-        List<Pair<String, String>> pairArrayList = new ArrayList<>();       // List to store the pairs
-
-        // Delete 14 first lines (empty and 13 first line of files that are not useful)
-        for(int i = 0 ; i < 14 ; ++i) {
-            // Data shifts to one index prior with every deletion, so always removing the first element
-            inputListOfLines.remove(0);
-        }
-
-        // Iterate through the list containing the lines of the file
-        for(String currentLine : inputListOfLines){
-            // Pair to save values
-            Pair<String, String> assumedAndProbablePair = null;
-
-            // Tokenize each line
-            StringTokenizer st = new StringTokenizer(currentLine, ";");
-            if(st.hasMoreTokens()){
-                // Creating a pair of values, using the first token (the assumed value) as key and
-                // the second token (the -probably- actual value) as value
-                assumedAndProbablePair = new Pair<>(st.nextToken().substring(1).replaceAll("\\d",""), st.nextToken().replaceAll("\\d",""));   // Removing an initial / from the key
-            }
-            pairArrayList.add(assumedAndProbablePair);      // Add current pair in the pairs list
+    private static boolean equalWithoutDigits(String line, int firstStart, int firstEnd, int secondStart, int secondEnd) {
+        int i = firstStart;
+        int j = secondStart;
+        while (true) {
+            while (i < firstEnd && isDigit(line.charAt(i)))
+                i++;
+            while (j < secondEnd && isDigit(line.charAt(j)))
+                j++;
+            if (i == firstEnd || j == secondEnd)
+                return i == firstEnd && j == secondEnd;
+            if (line.charAt(i++) != line.charAt(j++))
+                return false;
         }
+    }
 
-        return pairArrayList;       // Return the list of pairs
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
-    /**
-     * Evaluates the efficiency of the method assuming the group in which an individual belongs.
-     * @param listOfPairs list of pairs containing the assumed and actual group value for a number of individuals
-     * @return A double value corresponding to the percentage of the individuals that were successfully put into the correct group
-     */
-    private static Double computeEvaluation (List<Pair<String, String>> listOfPairs) {
-        // Number of pairs where the key and value values are the same (aka the individual was put in the probably correct group)
-        int counter = 0;
-
-        // Iterate through the list of pairs
-        for (Pair<String, String> currentPair : listOfPairs) {
-            // Count the number of pairs where the key and value pairs are the same
-            if(currentPair.getKey().equals(currentPair.getValue()))
-                counter++;      // Increase counter
-        }
+    private static int skipSeparators(String line, int position) {
+        while (position < line.length() && line.charAt(position) == ';')
+            position++;
+        return position;
+    }
 
-        // Compute and return efficiency (aka percentage of individuals put in the correct group)
-        return (counter * 100.0) / listOfPairs.size();
+    private static int endOfToken(String line, int position) {
+        while (position < line.length() && line.charAt(position) != ';')
+            position++;
+        return position;
     }
 
     /**
@@ -122,54 +96,110 @@ public class Evaluation {
      *               being examined - absolute path
      */
     public static void computeEvaluationForAllValues (File folder, String outFile) {
-        // Array with the contents of the input directory
+        // Files contained in the input directory, sorted by name
         File[] listOfFiles = folder.listFiles();
+        if (listOfFiles == null)
+            return;
+        Arrays.sort(listOfFiles);
 
-        File outputFile = new File(outFile);       // Handle to output file
-
-        // Create buffered writer
-        BufferedWriter writer = null;
-        try {
-            // Connecting writer to output file, using an appending option (no data overriding)
-            writer = new BufferedWriter(new FileWriter(outputFile, true));
+        // Connecting writer to output file, using an appending option (no data overriding)
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(outFile), true))) {
             // Iterating through the files contained in the input directory
-            for (int i = 0; i < listOfFiles.length; i++) {
-                if (listOfFiles[i].isFile()) {
+            for (File file : listOfFiles) {
+                if (file.isFile()) {
                     // Write the name of the file and the efficiency of the assigning method in file
-                    writer.write(listOfFiles[i].getName() + "\t" + computeEvaluation(lineListToListOfPairs(getRawLinesFromFile(folder.getAbsolutePath() + "\\" + listOfFiles[i].getName()))));
+                    writer.write(file.getName() + "\t" + computeEvaluation(file).getPercentage());
                     // Add a new line to the file, for the next entry to be written on next line
                     writer.newLine();
                 }
             }
         } catch (IOException e) {
-            System.out.println("Writer appending failed");
+            System.out.println("Evaluation of " + folder + " failed");
             e.printStackTrace();
         }
-        // Closing buffered writer
-        finally {
-            try {
-                if (writer != null)
-                    writer.close();
+    }
+
+    /**
+     * Computes the evaluation of each method for different number of SNPs. All the files of all the methods are evaluated
+     * concurrently, and the results are written to one table, one line per file: method, file, individuals put into the
+     * correct group, individuals, percentage of them. Lines are sorted by method and file name
+     * @param folder directory containing subdirectories for each method. Each subdirectory contains csv files with the assignment results
+     *               for the 10, 20,..., 100 first SNPs
+     * @param outputFile the file to write the table to, overwritten
+     * @param threads number of files evaluated at the same time
+     */
+    public static void computeEvaluationPerMethod(File folder, File outputFile, int threads) {
+        // Method folders and their files, sorted by name
+        File[] methodFolders = folder.listFiles();
+        if (methodFolders == null) {
+            System.out.println("Not a folder: " + folder);
+            return;
+        }
+        Arrays.sort(methodFolders);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<File> files = new ArrayList<>();
+            List<Future<Score>> scores = new ArrayList<>();
+            for (File methodFolder : methodFolders) {
+                File[] methodFiles = methodFolder.listFiles();
+                if (methodFiles == null)
+                    continue;
+                Arrays.sort(methodFiles);
+                for (final File file : methodFiles) {
+                    if (!file.isFile())
+                        continue;
+                    files.add(file);
+                    scores.add(executor.submit(new Callable<Score>() {
+                        @Override
+                        public Score call() throws IOException {
+                            return computeEvaluation(file);
+                        }
+                    }));
+                }
+            }
+
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+                writer.write("method\tfile\tcorrect\ttotal\tpercentage");
+                writer.newLine();
+                for (int i = 0; i < files.size(); ++i) {
+                    File file = files.get(i);
+                    Score score;
+                    try {
+                        score = scores.get(i).get();
+                    } catch (ExecutionException e) {
+                        // One unreadable file does not stop the rest
+                        System.out.println("Evaluation of " + file + " failed");
+                        e.getCause().printStackTrace();
+                        continue;
+                    }
+                    writer.write(file.getParentFile().getName() + "\t" + file.getName() + "\t" + score.correct + "\t"
+                            + score.total + "\t" + score.getPercentage());
+                    writer.newLine();
+                }
             } catch (IOException e) {
-                System.out.println("Writer close problem");
+                System.out.println("Writing evaluation results failed");
                 e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Computes the evaluation of each method for different number of SNPs
-     * @param folder directory containing subdirectories for each method. Each subdirectory contains csv files with the assignment results
-     *               for the 10, 20,..., 100 first SNPs
+     * Running count of the individuals of a file and of those put into the correct group
      */
-    public static void computeEvaluationPerMethod(File folder) {
-        File[] listOfFiles = folder.listFiles();        // Files contained in initial folder
-
-        // Iterate through files/folders in the folder
-        for(File file : listOfFiles){
-            // Compute the evaluation for every subfolder -- every method
-            // Create an output file with the efficiency of each method for the different number of SNPs in a different file per method
-            computeEvaluationForAllValues(file.getAbsoluteFile(), ".\\output\\" + file.getName() + "Result.txt");
+    private static class Score {
+        int correct = 0;
+        int total = 0;
+
+        /**
+         * @return percentage of individuals put into the correct group
+         */
+        Double getPercentage() {
+            return (correct * 100.0) / total;
         }
     }
 }
@@ -1,8 +1,11 @@
+import metrics.MetricsRegistry;
+import pipeline.*;
 import preprocessing.*;
 import rankAggregationMethods.BordaMethods.*;
 import rankAggregationMethods.MarkovChainMethods.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 
@@ -11,118 +14,69 @@ import java.util.*;
  * Email: <aintzevi@csd.auth.gr> <intz.katerina@gmail.com>
  */
 public class Main {
-    public static void main(String[] args) {
-        // Object to handle file reading and writing
-        FileOperations op = new FileOperations();
+    // Size limit of the cached rankings
+    private static final long RESULT_CACHE_BYTES = 256L << 20;
 
-        // Map to store the initial output of the pre processing stage (list that contains all initial rankings to be aggregated)
-        List<Map<String, Double>> inputListOfMaps = new ArrayList<>();
-        // List of the SNPs contained in the initial rankings
-        List<SNP> inputList;
+    public static void main(String[] args) {
+        // Record the time and memory of every stage, written to .\output\metrics.json at the end
+        MetricsRegistry.global().setEnabled(true);
 
         // Object to handle the input directory
         File folder = new File(".\\input\\");
-        // Array with the contents of the directory above
-        File[] listOfFiles = folder.listFiles();
-
-        // Iterating through the files contained in the input directory
-        for (int i = 0; i < listOfFiles.length; i++) {
-            if (listOfFiles[i].isFile()) {
-                System.out.println("File " + listOfFiles[i].getName());
-                op.setInputFilename(".\\input\\" + listOfFiles[i].getName());
-                inputList = op.fileLinesListToSNPList();
-                inputListOfMaps.add(SNP.formatOutput(inputList,0));
-            }
-        }
-
-        for (Map<String, Double> currentMap : inputListOfMaps) {
-            for(Map.Entry<String, Double> currentEntry: currentMap.entrySet()) {
-                System.out.println(currentEntry.getKey() + ", " + currentEntry.getValue());
-            }
-        }
-
-        /* ------------------- BORDA METHODS APPLICATION ------------------- */
-
-        BordaMethod borda = new BordaMedian();
-
-        Map<String, Double> outputMap = borda.getBordaMethodRanking(inputListOfMaps);
-
-        // Print here
-        System.out.println("Borda Median Method");
-        for (Map.Entry<String, Double> currentEntry : outputMap.entrySet()) {
-            System.out.println(currentEntry.getKey() + ", " + currentEntry.getValue());
-        }
-        op.setOutputFilename("BordaMedian" + outputMap.size() + "SNPs" + ".txt");
-        // Write to file
-        op.writeToFile(outputMap);
-
-        borda = new BordaGeometricMean();
-
-        outputMap = borda.getBordaMethodRanking(inputListOfMaps);
-        // Print here
-        System.out.println("Borda Geometric Mean Method");
-        for (Map.Entry<String, Double> currentEntry : outputMap.entrySet()) {
-            System.out.println(currentEntry.getKey() + ", " + currentEntry.getValue());
-        }
-        op.setOutputFilename("BordaGeometricMean" + outputMap.size() + "SNPs" + ".txt");
-
-        // Write to file
-        op.writeToFile(outputMap);
-        borda = new BordaPNorm(0.5);
-        outputMap = borda.getBordaMethodRanking(inputListOfMaps);
-
-        // Print here
-        System.out.println("Borda P-Norm Method");
-        for (Map.Entry<String, Double> currentEntry : outputMap.entrySet()) {
-            System.out.println(currentEntry.getKey() + ", " + currentEntry.getValue());
+        // Files contained in the directory above, sorted by name
+        List<File> listOfFiles = RankingFileReader.listRankingFiles(folder);
+        for (File file : listOfFiles) {
+            System.out.println("File " + file.getName());
         }
 
-        op.setOutputFilename("BordaPNorm" + outputMap.size() + "SNPs" + ".txt");
-        // Write to file
-        op.writeToFile(outputMap);
-
-        /* ------------------- MARKOV CHAIN METHODS APPLICATION ------------------- */
-
-        MarkovChain mc = new MC1();
-
-        outputMap = mc.getMCMethodRanking(inputListOfMaps, 0.05);
-
-        // Print here
-        System.out.println("MC1 Method");
-        for (Map.Entry<String, Double> currentEntry : outputMap.entrySet()) {
-            System.out.println(currentEntry.getKey() + ", " + currentEntry.getValue());
+        File outputFolder = new File(".\\output\\");
+        PriorDistributionSink priorSink = new PriorDistributionSink(outputFolder);
+        StationaryDistributionSolver solver = new StationaryDistributionSolver();
+
+        // Methods to apply, all of them at the same time, each ranking written as soon as it is ready
+        AggregationPipeline pipeline = new AggregationPipeline(Runtime.getRuntime().availableProcessors())
+                .addBordaMethod("BordaMedian", new BordaMedian())
+                .addBordaMethod("BordaGeometricMean", new BordaGeometricMean())
+                .addBordaMethod("BordaPNorm", new BordaPNorm(0.5))
+                .addMarkovChainMethod("MC1M", new MC1(), 0.05, solver, readPrior(priorSink.priorFile("MC1M")))
+                .addMarkovChainMethod("MC2M", new MC2(), 0.05, solver, readPrior(priorSink.priorFile("MC2M")))
+                .addMarkovChainMethod("MC3M", new MC3(), 0.05, solver, readPrior(priorSink.priorFile("MC3M")))
+                .addSink(new ConsoleSink(System.out, false))
+                .addSink(new RankingFileSink(outputFolder))
+                // Stationary distributions kept for the next run, to start the power method from
+                .addSink(priorSink);
+
+        // Rankings to be aggregated -- all files read concurrently, from their binary cache when unchanged since the last run.
+        // Rankings already computed for the same files and parameters are taken from the result cache
+        try {
+            ResultCache resultCache = new ResultCache(new File(".\\output\\results\\"), RESULT_CACHE_BYTES);
+            pipeline.setResultCache(resultCache).run(listOfFiles, 0, true);
+            System.out.println("Result cache: " + resultCache.getHits() + " hits, " + resultCache.getMisses() + " misses");
+        } catch (IOException e) {
+            System.out.println("Rank aggregation failed");
+            e.printStackTrace();
         }
-        op.setOutputFilename("MC1M" + outputMap.size() + "SNPs" + ".txt");
-
-        // Write to file
-        op.writeToFile(outputMap);
 
-        mc = new MC2();
-
-        outputMap = mc.getMCMethodRanking(inputListOfMaps, 0.05);
-
-        // Print here
-        System.out.println("MC2 Method");
-        for (Map.Entry<String, Double> currentEntry : outputMap.entrySet()) {
-            System.out.println(currentEntry.getKey() + ", " + currentEntry.getValue());
+        try {
+            MetricsRegistry.global().writeJson(new File(".\\output\\metrics.json"));
+        } catch (IOException e) {
+            System.out.println("Writing metrics failed");
+            e.printStackTrace();
         }
-        op.setOutputFilename("MC2M" + outputMap.size() + "SNPs" + ".txt");
-
-        // Write to file
-        op.writeToFile(outputMap);
-
-        mc = new MC3();
-
-        outputMap = mc.getMCMethodRanking(inputListOfMaps, 0.05);
+    }
 
-        // Print here
-        System.out.println("MC3 Method");
-        for (Map.Entry<String, Double> currentEntry : outputMap.entrySet()) {
-            System.out.println(currentEntry.getKey() + ", " + currentEntry.getValue());
+    /**
+     * Helper function, reads the stationary distribution of the previous run, null if there is none or it cannot be read
+     */
+    private static PriorDistribution readPrior(File priorFile) {
+        if (!priorFile.isFile())
+            return null;
+        try {
+            return PriorDistribution.read(priorFile);
+        } catch (IOException e) {
+            System.out.println("Reading prior distribution failed, starting from the uniform one");
+            e.printStackTrace();
+            return null;
         }
-        op.setOutputFilename("MC3M" + outputMap.size() + "SNPs" + ".txt");
-
-        // Write to file
-        op.writeToFile(outputMap);
     }
-}
\ No newline at end of file
+}
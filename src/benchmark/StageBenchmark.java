@@ -0,0 +1,230 @@
+package benchmark;
+
+import preprocessing.*;
+import rankAggregationMethods.RankAggregationDataTransformation;
+import rankAggregationMethods.BordaMethods.*;
+import rankAggregationMethods.MarkovChainMethods.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Measures every stage of the rank aggregation on synthetic inputs (check SyntheticRankingGenerator):
+ * parsing of the TRES files, transformation of the rankings, each Borda method and each Markov Chain method.
+ * Every stage runs a number of warmup iterations, for the JIT to compile it, and then a number of measured iterations, of
+ * which the minimum and the median time are printed, for every combination of number of SNPs (n) and of rankings (m).
+ *
+ * Arguments, all optional, as name=value:
+ *  n=1000,10000,100000            numbers of SNPs, larger ones (e.g. 1000000) only when given
+ *  m=3,10,50                      numbers of rankings, larger ones (e.g. 200) only when given
+ *  overlap=0.5 missingness=0.2    (check SyntheticRankingGenerator)
+ *  warmup=3 iterations=5 seed=1
+ *  stages=parse,transform,borda,mc    stages to run
+ *  dir=path                       folder for the generated files, a temporary folder by default. Files are kept
+ *                                 there, in a subfolder per n, m, seed, overlap and missingness, and reused
+ *
+ * The dense Markov Chain methods create an n x n matrix, so they only run for n up to DENSE_LIMIT. Without the matrix,
+ * MC1 and MC2 still keep the pairwise wins in n x n bits, read by every product (check MajorityTransitionOperator), so
+ * they only run for n up to PAIRWISE_LIMIT, and every product of MC3 costs O(m n g), g the number of presence patterns,
+ * at most min(n, 2^m) (check ProportionalTransitionOperator), so it only runs up to PROPORTIONAL_WORK_LIMIT.
+ * Stages not run for an input are printed as skipped. The default n and m all finish; larger inputs (n = 1000000,
+ * m = 200) have to be asked for explicitly, the transformation of their rankings to maps alone takes tens of GB
+ */
+public class StageBenchmark {
+    // Largest number of SNPs the dense Markov Chain methods are run for
+    private static final int DENSE_LIMIT = 2000;
+    // Largest number of SNPs MC1 and MC2 are run for without the dense matrix, 12.5 MB of bits and about 30 s per run
+    private static final int PAIRWISE_LIMIT = 10000;
+    // Largest m * n * g MC3 is run for without the dense matrix, a few seconds per run
+    private static final long PROPORTIONAL_WORK_LIMIT = 100000000L;
+
+    // Keeps the results of the stages alive, so the JIT cannot throw the measured work away
+    private static long sink;
+
+    // Number of SNPs and rankings of the input
+    private final int n;
+    private final int m;
+    // Warmup and measured iterations of every stage
+    private final int warmup;
+    private final int iterations;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> arguments = new HashMap<>();
+        for (String argument : args) {
+            int separator = argument.indexOf('=');
+            if (separator < 0)
+                throw new IllegalArgumentException("Arguments must be name=value: " + argument);
+            arguments.put(argument.substring(0, separator), argument.substring(separator + 1));
+        }
+
+        int[] snpCounts = parseInts(arguments.getOrDefault("n", "1000,10000,100000"));
+        int[] rankingCounts = parseInts(arguments.getOrDefault("m", "3,10,50"));
+        double overlap = Double.parseDouble(arguments.getOrDefault("overlap", "0.5"));
+        double missingness = Double.parseDouble(arguments.getOrDefault("missingness", "0.2"));
+        int warmup = Integer.parseInt(arguments.getOrDefault("warmup", "3"));
+        int iterations = Integer.parseInt(arguments.getOrDefault("iterations", "5"));
+        long seed = Long.parseLong(arguments.getOrDefault("seed", "1"));
+        if (iterations < 1)
+            throw new IllegalArgumentException("At least one measured iteration is needed");
+        Set<String> stages = new HashSet<>(Arrays.asList(arguments.getOrDefault("stages", "parse,transform,borda,mc").split(",")));
+        File baseFolder = arguments.containsKey("dir") ? new File(arguments.get("dir"))
+                : new File(System.getProperty("java.io.tmpdir"), "rank-aggregation-benchmark");
+
+        System.out.println("stage\tn\tm\tmin ms\tmedian ms");
+        for (int n : snpCounts) {
+            for (int m : rankingCounts) {
+                // Generated files are reused by later runs with the same generator parameters only
+                File folder = new File(baseFolder, "n" + n + "m" + m + "seed" + seed + "overlap" + overlap
+                        + "missingness" + missingness);
+                List<File> files = RankingFileReader.listRankingFiles(folder);
+                if (files.size() != m)
+                    files = new SyntheticRankingGenerator(seed, n, overlap, missingness).writeRankings(folder, m);
+
+                new StageBenchmark(n, m, warmup, iterations).run(files, stages);
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private StageBenchmark(int n, int m, int warmup, int iterations) {
+        this.n = n;
+        this.m = m;
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Runs the selected stages on one input
+     */
+    private void run(final List<File> files, Set<String> stages) throws IOException {
+        if (stages.contains("parse")) {
+            measure("parse FileOperations", new Stage() {
+                @Override
+                public long run() {
+                    long result = 0;
+                    for (File file : files)
+                        result += new FileOperations(file.getPath(), null).fileLinesListToSNPList().size();
+                    return result;
+                }
+            });
+            measure("parse TresFileParser", new Stage() {
+                @Override
+                public long run() throws IOException {
+                    return RankingFileReader.readAll(files, 0, 1, false).getDictionary().size();
+                }
+            });
+        }
+
+        final IndexedRankings input = RankingFileReader.readAll(files, 0, Runtime.getRuntime().availableProcessors(), false);
+
+        if (stages.contains("transform")) {
+            final List<Map<String, Double>> listOfRankings = input.toListOfMaps();
+            measure("transform getElementIds", new Stage() {
+                @Override
+                public long run() {
+                    return RankAggregationDataTransformation.getElementIds(listOfRankings).size();
+                }
+            });
+            final List<String> idList = RankAggregationDataTransformation.getElementIds(listOfRankings);
+            measure("transform getRankingsOfAllElements", new Stage() {
+                @Override
+                public long run() {
+                    return RankAggregationDataTransformation.getRankingsOfAllElements(listOfRankings, idList).size();
+                }
+            });
+        }
+
+        if (stages.contains("borda")) {
+            for (final BordaMethod method : new BordaMethod[] {new BordaMedian(), new BordaGeometricMean(), new BordaPNorm(0.5)}) {
+                measure(method.getClass().getSimpleName(), new Stage() {
+                    @Override
+                    public long run() {
+                        return method.getBordaMethodRanking(input).size();
+                    }
+                });
+            }
+        }
+
+        if (stages.contains("mc")) {
+            int size = input.getDictionary().size();
+            for (final MarkovChain method : new MarkovChain[] {new MC1(), new MC2(), new MC3()}) {
+                boolean fits = method instanceof MC3 ? proportionalWork(size) <= PROPORTIONAL_WORK_LIMIT
+                        : size <= PAIRWISE_LIMIT;
+                if (fits) {
+                    measure(method.getClass().getSimpleName() + " matrix-free", new Stage() {
+                        @Override
+                        public long run() {
+                            return method.getMatrixFreeMCMethodRanking(input, 0.05, new StationaryDistributionSolver())
+                                    .getSortedRanking().size();
+                        }
+                    });
+                }
+                else
+                    skipped(method.getClass().getSimpleName() + " matrix-free");
+                if (size <= DENSE_LIMIT) {
+                    measure(method.getClass().getSimpleName() + " dense", new Stage() {
+                        @Override
+                        public long run() {
+                            return method.getMCMethodRanking(MarkovChainInput.fromIndexedRankings(input), 0.05,
+                                    new StationaryDistributionSolver()).getSortedRanking().size();
+                        }
+                    });
+                }
+                else
+                    skipped(method.getClass().getSimpleName() + " dense");
+            }
+        }
+    }
+
+    /**
+     * Helper function, work of every product of MC3 without the dense matrix, m * n * g with g at most min(n, 2^m)
+     */
+    private long proportionalWork(int size) {
+        long groups = m < 62 ? Math.min(size, 1L << m) : size;
+        return (long) m * size * groups;
+    }
+
+    /**
+     * Prints a stage that is not run for this input, in place of its times
+     */
+    private void skipped(String name) {
+        System.out.println(name + "\t" + n + "\t" + m + "\tskipped\tskipped");
+    }
+
+    /**
+     * Runs a stage warmup + iterations times and prints the minimum and median time of the measured iterations
+     */
+    private void measure(String name, Stage stage) throws IOException {
+        for (int i = 0; i < warmup; ++i)
+            sink += stage.run();
+
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; ++i) {
+            long start = System.nanoTime();
+            sink += stage.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.println(String.format(Locale.ROOT, "%s\t%d\t%d\t%.3f\t%.3f", name, n, m,
+                times[0] / 1e6, times[iterations / 2] / 1e6));
+    }
+
+    /**
+     * One measured stage, returns something computed from its result
+     */
+    private interface Stage {
+        long run() throws IOException;
+    }
+
+    /**
+     * Helper function, parses a comma separated list of integers
+     */
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i)
+            values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+}
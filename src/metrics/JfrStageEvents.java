@@ -0,0 +1,109 @@
+package metrics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Emits the stages recorded as custom Flight Recorder events named "featureSelection.Stage", so that they show up next to
+ * GC, allocation and lock events in a recording (java -XX:StartFlightRecording=...).
+ * The code is compiled for Java 8, which has no jdk.jfr API, so the event type is defined at run time through
+ * jdk.jfr.EventFactory by reflection. On runtimes without it (Java 8) nothing is emitted
+ */
+final class JfrStageEvents {
+    private static final String EVENT_NAME = "featureSelection.Stage";
+    // Event fields, in the order of the values set
+    private static final String[] STRING_FIELDS = {"stage", "method", "thread", "counts"};
+    private static final String[] LONG_FIELDS = {"wallNanos", "cpuNanos", "allocatedBytes"};
+
+    // jdk.jfr.EventFactory of the event type and the methods used, null if Flight Recorder is not available
+    private static final Object FACTORY;
+    private static final Method NEW_EVENT;
+    private static final Method SET;
+    private static final Method SHOULD_COMMIT;
+    private static final Method COMMIT;
+
+    static {
+        Object factory = null;
+        Method newEvent = null, set = null, shouldCommit = null, commit = null;
+        try {
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+            Constructor<?> newField = valueDescriptor.getConstructor(Class.class, String.class);
+
+            List<Object> annotations = Arrays.asList(
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Name"), EVENT_NAME),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Label"), "Pipeline Stage"),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Category"), new String[]{"Feature Selection"}));
+            List<Object> fields = new ArrayList<>();
+            for (String field : STRING_FIELDS)
+                fields.add(newField.newInstance(String.class, field));
+            for (String field : LONG_FIELDS)
+                fields.add(newField.newInstance(long.class, field));
+
+            factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            newEvent = eventFactory.getMethod("newEvent");
+            set = event.getMethod("set", int.class, Object.class);
+            shouldCommit = event.getMethod("shouldCommit");
+            commit = event.getMethod("commit");
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // No Flight Recorder, events are not emitted
+            factory = null;
+        }
+        FACTORY = factory;
+        NEW_EVENT = newEvent;
+        SET = set;
+        SHOULD_COMMIT = shouldCommit;
+        COMMIT = commit;
+    }
+
+    private JfrStageEvents() {
+    }
+
+    /**
+     * @return true if stages are emitted as Flight Recorder events
+     */
+    static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Emits a stage recorded as an event, if Flight Recorder is available and recording it
+     * @param record the stage recorded
+     */
+    static void emit(StageRecord record) {
+        if (FACTORY == null)
+            return;
+        try {
+            Object event = NEW_EVENT.invoke(FACTORY);
+            if (!(Boolean) SHOULD_COMMIT.invoke(event))
+                return;
+            Object[] values = {record.getStage(), record.getMethod(), record.getThread(), countsOf(record),
+                    record.getWallNanos(), record.getCpuNanos(), record.getAllocatedBytes()};
+            for (int i = 0; i < values.length; ++i)
+                SET.invoke(event, i, values[i]);
+            COMMIT.invoke(event);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Losing an event must not fail the stage
+        }
+    }
+
+    /**
+     * Helper function, the counts of a stage as "name=value" pairs
+     */
+    private static String countsOf(StageRecord record) {
+        StringBuilder counts = new StringBuilder();
+        for (Map.Entry<String, Number> count : record.getCounts().entrySet()) {
+            if (counts.length() > 0)
+                counts.append(", ");
+            counts.append(count.getKey()).append('=').append(count.getValue());
+        }
+        return counts.toString();
+    }
+}
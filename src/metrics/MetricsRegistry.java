@@ -0,0 +1,119 @@
+package metrics;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Records where a run spends time and memory, per stage (parse, transform, matrix, power iteration, sort, write...) and
+ * per method. Every stage measured records its wall time, and the CPU time and allocated bytes of the thread that ran it
+ * (ThreadMXBean, work handed to other threads is not included), along with counts set by the stage: elements, rankings,
+ * matrix dimensions, iterations, residuals.
+ * Records can be written as JSON at the end of the run, and every stage is also emitted as a JFR event when the runtime
+ * has Flight Recorder (check JfrStageEvents).
+ *
+ * The registry is off by default, then measuring a stage costs nothing and nothing is recorded
+ */
+public class MetricsRegistry {
+    // Registry the stages of the pipeline are recorded in
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    // Thread CPU time and allocated bytes, null if the runtime cannot measure them
+    private final ThreadMXBean threads;
+    private final com.sun.management.ThreadMXBean allocations;
+    // Whether stages are recorded
+    private volatile boolean enabled = false;
+    // Stages recorded, in the order they ended
+    private final List<StageRecord> records = new ArrayList<>();
+
+    public MetricsRegistry() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threads = bean.isCurrentThreadCpuTimeSupported() ? bean : null;
+        allocations = bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        if (threads != null && !bean.isThreadCpuTimeEnabled())
+            bean.setThreadCpuTimeEnabled(true);
+        if (allocations != null && !allocations.isThreadAllocatedMemoryEnabled())
+            allocations.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * @return the registry the stages of the pipeline are recorded in
+     */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    // Class accessors and mutators
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts measuring a stage, to be used in a try-with-resources block
+     * @param stage name of the stage, e.g. "parse"
+     * @param method the method or file the stage runs for, null if none
+     * @return the running stage, recorded when closed
+     */
+    public Stage startStage(String stage, String method) {
+        return enabled ? new Stage(this, stage, method) : Stage.DISABLED;
+    }
+
+    /**
+     * @return the stages recorded so far, in the order they ended
+     */
+    public synchronized List<StageRecord> getRecords() {
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * Removes all the stages recorded
+     */
+    public synchronized void clear() {
+        records.clear();
+    }
+
+    /**
+     * @return the stages recorded so far as a JSON array, one object per stage
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("[");
+        List<StageRecord> currentRecords = getRecords();
+        for (int i = 0; i < currentRecords.size(); ++i) {
+            json.append(i == 0 ? "\n  " : ",\n  ");
+            currentRecords.get(i).appendJson(json);
+        }
+        return json.append(currentRecords.isEmpty() ? "]" : "\n]").append('\n').toString();
+    }
+
+    /**
+     * Writes the stages recorded so far to a file, as JSON
+     * @param file the file to write, overwritten
+     * @throws IOException if the file cannot be written
+     */
+    public void writeJson(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(toJson());
+        }
+    }
+
+    long currentCpuNanos() {
+        return threads != null ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    long currentAllocatedBytes() {
+        return allocations != null ? allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    synchronized void record(StageRecord record) {
+        records.add(record);
+    }
+}
@@ -0,0 +1,59 @@
+package metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A stage being measured. Counts are set while it runs, and it is recorded in its registry when closed
+ */
+public class Stage implements AutoCloseable {
+    // Stage returned while the registry is off, records nothing
+    static final Stage DISABLED = new Stage(null, null, null);
+
+    private final MetricsRegistry registry;
+    private final String stage;
+    private final String method;
+    // Values at the start of the stage
+    private final long startNanos;
+    private final long startCpuNanos;
+    private final long startAllocatedBytes;
+    // Counts set by the stage, in the order they were set
+    private final Map<String, Number> counts = new LinkedHashMap<>();
+
+    Stage(MetricsRegistry registry, String stage, String method) {
+        this.registry = registry;
+        this.stage = stage;
+        this.method = method;
+        this.startNanos = registry != null ? System.nanoTime() : 0;
+        this.startCpuNanos = registry != null ? registry.currentCpuNanos() : 0;
+        this.startAllocatedBytes = registry != null ? registry.currentAllocatedBytes() : 0;
+    }
+
+    /**
+     * Sets a count of the stage, e.g. "elements", "rankings", "iterations", "residual"
+     * @param name name of the count
+     * @param value its value
+     * @return this stage
+     */
+    public Stage set(String name, Number value) {
+        if (registry != null)
+            counts.put(name, value);
+        return this;
+    }
+
+    /**
+     * Ends the stage and records it
+     */
+    @Override
+    public void close() {
+        if (registry == null)
+            return;
+        long cpuNanos = registry.currentCpuNanos();
+        long allocatedBytes = registry.currentAllocatedBytes();
+        StageRecord record = new StageRecord(stage, method, Thread.currentThread().getName(), System.nanoTime() - startNanos,
+                cpuNanos < 0 ? -1 : cpuNanos - startCpuNanos,
+                allocatedBytes < 0 ? -1 : allocatedBytes - startAllocatedBytes, counts);
+        registry.record(record);
+        JfrStageEvents.emit(record);
+    }
+}
@@ -0,0 +1,111 @@
+package metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measurements of one stage run
+ */
+public class StageRecord {
+    private final String stage;
+    // The method or file the stage ran for, null if none
+    private final String method;
+    // Thread that ran the stage
+    private final String thread;
+    private final long wallNanos;
+    // CPU time and allocated bytes of the thread, -1 if the runtime cannot measure them
+    private final long cpuNanos;
+    private final long allocatedBytes;
+    // Counts set by the stage
+    private final Map<String, Number> counts;
+
+    StageRecord(String stage, String method, String thread, long wallNanos, long cpuNanos, long allocatedBytes,
+                Map<String, Number> counts) {
+        this.stage = stage;
+        this.method = method;
+        this.thread = thread;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.counts = Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+    }
+
+    // Class accessors
+
+    public String getStage() {
+        return stage;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public Map<String, Number> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Appends the record as a JSON object
+     */
+    void appendJson(StringBuilder json) {
+        json.append("{\"stage\": ");
+        appendString(json, stage);
+        json.append(", \"method\": ");
+        appendString(json, method);
+        json.append(", \"thread\": ");
+        appendString(json, thread);
+        json.append(", \"wallNanos\": ").append(wallNanos)
+                .append(", \"cpuNanos\": ").append(cpuNanos)
+                .append(", \"allocatedBytes\": ").append(allocatedBytes);
+        for (Map.Entry<String, Number> count : counts.entrySet()) {
+            json.append(", ");
+            appendString(json, count.getKey());
+            json.append(": ");
+            double value = count.getValue().doubleValue();
+            // JSON has no NaN or infinity
+            if (Double.isNaN(value) || Double.isInfinite(value))
+                json.append("null");
+            else
+                json.append(count.getValue());
+        }
+        json.append('}');
+    }
+
+    /**
+     * Helper function, appends a JSON string, escaped
+     */
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < ' ')
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,397 @@
+package pipeline;
+
+import preprocessing.IndexedRankings;
+import preprocessing.RankingFileReader;
+import rankAggregationMethods.BordaMethods.BordaMethod;
+import rankAggregationMethods.MarkovChainMethods.*;
+import rankAggregationMethods.RankingMatrix;
+import rankAggregationMethods.SortedRanking;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Applies a set of rank aggregation methods to the same input rankings concurrently.
+ * The methods, with their parameters, and the sinks the rankings go to are added first, then the pipeline is run on the
+ * input. The rankings are indexed once into a RankingMatrix, which is immutable and shared by all the methods, along
+ * with the structures the Markov Chain methods build from it (check MarkovChainInput). The methods then run on a fixed
+ * number of threads, and every ranking is given to the sinks as soon as it is computed, from the thread that runs the
+ * pipeline. The Borda methods that rank all the elements run together, as one task: the values of every element are
+ * gathered once for all of them (check BordaMethod.getBordaMethodRankings), in parallel on the threads the other
+ * methods leave free. The operators MC1 and MC2 share are built by a task of their own (check
+ * MarkovChain.prepareOperators), which only these methods wait for.
+ *
+ * With a ResultCache, rankings already computed for the same input, method and parameters are taken from the cache
+ * (and given to the sinks) before anything else is done, and only the others are computed and then stored.
+ *
+ * A pipeline can be run several times, also on different inputs. Methods keep no state, so the same instance may be
+ * added more than once with different parameters
+ */
+public class AggregationPipeline {
+    // Methods to apply, in the order they were added
+    private final List<Step> steps = new ArrayList<>();
+    // Destinations of the rankings
+    private final List<RankingSink> sinks = new ArrayList<>();
+    // Maximum number of methods running at the same time
+    private final int threads;
+    // Rankings computed in earlier runs, null to compute all of them
+    private ResultCache resultCache;
+
+    /**
+     * @param threads maximum number of methods running at the same time, positive
+     */
+    public AggregationPipeline(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads must be positive");
+        this.threads = threads;
+    }
+
+    // Class accessors and mutators
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * @param resultCache cache to take the rankings computed in earlier runs from and store the new ones in,
+     *                    null to compute all the rankings
+     * @return this pipeline
+     */
+    public AggregationPipeline setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+        return this;
+    }
+
+    /**
+     * Adds a Borda method to the pipeline
+     * @param name name of the ranking, e.g. "BordaMedian", used by the sinks (file names...)
+     * @param method the Borda method, with its parameters
+     * @return this pipeline
+     */
+    public AggregationPipeline addBordaMethod(String name, final BordaMethod method) {
+        steps.add(new Step(name, method) {
+            @Override
+            PipelineResult apply(MarkovChainInput input, ForkJoinPool pool) {
+                SortedRanking ranking = method.getSortedBordaMethodRanking(input.getRankingMatrix(), pool);
+                return new PipelineResult(getName(), ranking, null);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds a Borda method to the pipeline, keeping only the k best elements of its ranking
+     * (check BordaMethod.getSortedTopKBordaMethodRanking)
+     * @param name name of the ranking, e.g. "BordaMedian", used by the sinks (file names...)
+     * @param method the Borda method, with its parameters
+     * @param k number of elements wanted, positive
+     * @return this pipeline
+     */
+    public AggregationPipeline addBordaMethod(String name, final BordaMethod method, final int k) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+        String parameters = method.getParameters().isEmpty() ? "k=" + k : method.getParameters() + ",k=" + k;
+        steps.add(new Step(name, method.getClass(), parameters) {
+            @Override
+            PipelineResult apply(MarkovChainInput input, ForkJoinPool pool) {
+                SortedRanking ranking = method.getSortedTopKBordaMethodRanking(input.getRankingMatrix(), k);
+                return new PipelineResult(getName(), ranking, null);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds a Markov Chain method to the pipeline, applied without the dense transition matrix
+     * (check MarkovChain.getMatrixFreeMCMethodRanking)
+     * @param name name of the ranking, e.g. "MC1M", used by the sinks (file names...)
+     * @param method the Markov Chain method
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @param prior distribution to start the power method from, null to start from the uniform one
+     * @return this pipeline
+     */
+    public AggregationPipeline addMarkovChainMethod(String name, final MarkovChain method, final double a,
+                                                    final StationaryDistributionSolver solver, final PriorDistribution prior) {
+        steps.add(new Step(name, method, "a=" + a + ",tolerance=" + solver.getTolerance()
+                + ",maxIterations=" + solver.getMaxIterations()) {
+            @Override
+            PipelineResult apply(MarkovChainInput input, ForkJoinPool pool) {
+                MarkovChainRanking ranking = method.getMatrixFreeMCMethodRanking(input, a, solver, prior);
+                return new PipelineResult(getName(), ranking.getSortedRanking(), ranking);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds a destination for the rankings. Sinks get every ranking in the order they were added
+     * @param sink the destination of the rankings
+     * @return this pipeline
+     */
+    public AggregationPipeline addSink(RankingSink sink) {
+        sinks.add(sink);
+        return this;
+    }
+
+    /**
+     * Reads the ranking files concurrently (check RankingFileReader.readAll), then runs the pipeline on them
+     * @param files the files to read, the rankings keep this order
+     * @param parameter 0 to rank by SNP rank, 1 by normalized SNP score (check SNP.formatOutput)
+     * @param useCache true to read unchanged files from their binary cache (check RankingCache)
+     * @return the ranking of every method, in the order the methods were added
+     * @throws IOException if any of the files cannot be read, a method fails or a sink cannot write its ranking
+     */
+    public List<PipelineResult> run(List<File> files, int parameter, boolean useCache) throws IOException {
+        return run(RankingFileReader.readAll(files, parameter, threads, useCache));
+    }
+
+    /**
+     * Applies all the methods to the input rankings and gives every ranking to the sinks as soon as it is computed
+     * @param indexedRankings the input rankings, SNP ids interned in a SnpIdDictionary
+     * @return the ranking of every method, in the order the methods were added
+     * @throws IOException if a method fails or a sink cannot write its ranking. Methods still running are cancelled.
+     * Failing to store a ranking in the result cache is not an error
+     */
+    public List<PipelineResult> run(IndexedRankings indexedRankings) throws IOException {
+        PipelineResult[] results = new PipelineResult[steps.size()];
+
+        // Rankings of earlier runs first, only the others are computed
+        String[] keys = new String[steps.size()];
+        List<Integer> missing = new ArrayList<>();
+        String inputHash = resultCache != null ? ResultCache.hashOf(indexedRankings) : null;
+        for (int i = 0; i < steps.size(); ++i) {
+            Step step = steps.get(i);
+            if (resultCache != null) {
+                keys[i] = ResultCache.keyOf(inputHash, step.methodClass, step.parameters);
+                results[i] = resultCache.get(keys[i], step.getName());
+            }
+            if (results[i] == null)
+                missing.add(i);
+            else
+                for (RankingSink sink : sinks)
+                    sink.accept(results[i]);
+        }
+        if (missing.isEmpty())
+            return Arrays.asList(results);
+
+        // Indexed once, shared by all the methods
+        final MarkovChainInput input = MarkovChainInput.of(RankingMatrix.fromIndexedRankings(indexedRankings));
+        int numberOfRankings = input.getRankingMatrix().getNumberOfRankings();
+
+        // Positions of the steps of every task: the Borda methods of whole rankings together, every other step alone
+        List<Integer> bordaSteps = new ArrayList<>();
+        List<List<Integer>> tasks = new ArrayList<>();
+        final List<MarkovChain> preparedMethods = new ArrayList<>();
+        for (int i : missing) {
+            Step step = steps.get(i);
+            if (step.bordaMethod != null)
+                bordaSteps.add(i);
+            else
+                tasks.add(Collections.singletonList(i));
+            if (step.markovChainMethod != null && step.markovChainMethod.hasPreparedOperator(numberOfRankings))
+                preparedMethods.add(step.markovChainMethod);
+        }
+        int numberOfTasks = tasks.size() + (bordaSteps.isEmpty() ? 0 : 1) + (preparedMethods.isEmpty() ? 0 : 1);
+
+        // The Borda methods are aggregated with the threads no other task is using
+        int bordaParallelism = threads - (numberOfTasks - 1);
+        ForkJoinPool bordaPool = !bordaSteps.isEmpty() && bordaParallelism > 1
+                ? new ForkJoinPool(bordaParallelism) : null;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, numberOfTasks));
+        try {
+            CompletionService<List<PipelineResult>> completionService = new ExecutorCompletionService<>(executor);
+            Map<Future<List<PipelineResult>>, List<Integer>> positions = new HashMap<>();
+            if (!bordaSteps.isEmpty())
+                positions.put(submit(completionService, bordaSteps, input, bordaPool, null), bordaSteps);
+
+            // Shared operators of MC1 and MC2, from one count of the pairwise wins. Queued before the methods waiting
+            // for them, so it always gets a thread, and these methods are queued last, so they do not hold the threads
+            // the other methods could run on
+            Future<?> preparedOperators = null;
+            if (!preparedMethods.isEmpty())
+                preparedOperators = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        MarkovChain.prepareOperators(preparedMethods, input);
+                    }
+                });
+            List<List<Integer>> waitingTasks = new ArrayList<>();
+            for (List<Integer> task : tasks) {
+                MarkovChain method = steps.get(task.get(0)).markovChainMethod;
+                if (method != null && method.hasPreparedOperator(numberOfRankings))
+                    waitingTasks.add(task);
+                else
+                    positions.put(submit(completionService, task, input, null, null), task);
+            }
+            for (List<Integer> task : waitingTasks)
+                positions.put(submit(completionService, task, input, null, preparedOperators), task);
+
+            // Give the rankings to the sinks in the order they are computed
+            for (int counter = 0; counter < positions.size(); ++counter) {
+                Future<List<PipelineResult>> future = take(completionService);
+                List<Integer> task = positions.get(future);
+                List<PipelineResult> taskResults = waitFor(future, namesOf(task));
+                for (int j = 0; j < task.size(); ++j) {
+                    int position = task.get(j);
+                    results[position] = taskResults.get(j);
+                    if (resultCache != null)
+                        store(keys[position], results[position]);
+                    for (RankingSink sink : sinks)
+                        sink.accept(results[position]);
+                }
+            }
+            return Arrays.asList(results);
+        } finally {
+            executor.shutdownNow();
+            if (bordaPool != null)
+                bordaPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Helper function, submits a task
+     * @param pool pool to aggregate the Borda methods in, null to aggregate them in the thread of the task
+     * @param operators build of the operators the task needs, waited for first. null if it needs none
+     */
+    private Future<List<PipelineResult>> submit(CompletionService<List<PipelineResult>> completionService,
+                                                final List<Integer> task, final MarkovChainInput input,
+                                                final ForkJoinPool pool, final Future<?> operators) {
+        return completionService.submit(new Callable<List<PipelineResult>>() {
+            @Override
+            public List<PipelineResult> call() throws Exception {
+                if (operators != null) {
+                    try {
+                        operators.get();
+                    } catch (ExecutionException e) {
+                        throw new IOException("Building the Markov Chain operators failed", e.getCause());
+                    }
+                }
+                return apply(task, input, pool);
+            }
+        });
+    }
+
+    /**
+     * Helper function, applies the steps of a task. Several steps are Borda methods of whole rankings, aggregated in one
+     * pass over the elements
+     * @return the ranking of every step, in the order of the task
+     */
+    private List<PipelineResult> apply(List<Integer> task, MarkovChainInput input, ForkJoinPool pool) {
+        if (task.size() == 1)
+            return Collections.singletonList(steps.get(task.get(0)).apply(input, pool));
+
+        List<BordaMethod> methods = new ArrayList<>(task.size());
+        for (int i : task)
+            methods.add(steps.get(i).bordaMethod);
+        List<SortedRanking> rankings = BordaMethod.getBordaMethodRankings(methods, input.getRankingMatrix(), pool);
+
+        List<PipelineResult> taskResults = new ArrayList<>(task.size());
+        for (int j = 0; j < task.size(); ++j)
+            taskResults.add(new PipelineResult(steps.get(task.get(j)).getName(), rankings.get(j), null));
+        return taskResults;
+    }
+
+    /**
+     * Helper function, names of the steps of a task, comma separated
+     */
+    private String namesOf(List<Integer> task) {
+        StringBuilder names = new StringBuilder();
+        for (int i : task) {
+            if (names.length() > 0)
+                names.append(", ");
+            names.append(steps.get(i).getName());
+        }
+        return names.toString();
+    }
+
+    /**
+     * Helper function, stores a computed ranking in the result cache. The ranking is still used if it cannot be stored
+     */
+    private void store(String key, PipelineResult result) {
+        try {
+            resultCache.put(key, result);
+        } catch (IOException e) {
+            System.out.println("Writing ranking " + result.getName() + " to the result cache failed");
+        }
+    }
+
+    /**
+     * Helper function, waits for the next method to finish
+     */
+    private static Future<List<PipelineResult>> take(CompletionService<List<PipelineResult>> completionService)
+            throws IOException {
+        try {
+            return completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the pipeline", e);
+        }
+    }
+
+    /**
+     * Helper function, gets the rankings of a finished task, turning its failure into an IOException
+     */
+    private static List<PipelineResult> waitFor(Future<List<PipelineResult>> future, String name) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Method " + name + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running " + name, e);
+        }
+    }
+
+    /**
+     * One method of the pipeline, with its parameters
+     */
+    private abstract static class Step {
+        private final String name;
+        // Class of the method and the parameters it is applied with, the key of its rankings in a result cache
+        private final Class<?> methodClass;
+        private final String parameters;
+        // The method if it is a Markov Chain one, its operators are prepared with the others
+        private final MarkovChain markovChainMethod;
+        // The method if it is a Borda one ranking all the elements, aggregated together with the others
+        private final BordaMethod bordaMethod;
+
+        Step(String name, Class<?> methodClass, String parameters) {
+            this.name = name;
+            this.methodClass = methodClass;
+            this.parameters = parameters;
+            this.markovChainMethod = null;
+            this.bordaMethod = null;
+        }
+
+        Step(String name, MarkovChain markovChainMethod, String parameters) {
+            this.name = name;
+            this.methodClass = markovChainMethod.getClass();
+            this.parameters = parameters;
+            this.markovChainMethod = markovChainMethod;
+            this.bordaMethod = null;
+        }
+
+        Step(String name, BordaMethod bordaMethod) {
+            this.name = name;
+            this.methodClass = bordaMethod.getClass();
+            this.parameters = bordaMethod.getParameters();
+            this.markovChainMethod = null;
+            this.bordaMethod = bordaMethod;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Applies the method to the shared input, alone
+         * @param input the indexed input rankings, with the structures of the Markov Chain methods
+         * @param pool pool the Borda methods of whole rankings aggregate in, null for the calling thread
+         * @return the ranking of the method
+         */
+        abstract PipelineResult apply(MarkovChainInput input, ForkJoinPool pool);
+    }
+}
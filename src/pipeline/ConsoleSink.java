@@ -0,0 +1,33 @@
+package pipeline;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Prints a line per ranking (method, number of SNPs and, for the Markov Chain methods, how the stationary distribution
+ * converged), optionally followed by all its entries
+ */
+public class ConsoleSink implements RankingSink {
+    private final PrintStream out;
+    // Whether every entry of the rankings is printed, "id, value" per line
+    private final boolean printEntries;
+
+    /**
+     * @param out stream to print to, e.g. System.out
+     * @param printEntries true to print every entry of the rankings, false for one line per ranking
+     */
+    public ConsoleSink(PrintStream out, boolean printEntries) {
+        this.out = out;
+        this.printEntries = printEntries;
+    }
+
+    @Override
+    public void accept(PipelineResult result) {
+        out.println(result.getName() + ", " + result.getRanking().size() + " SNPs"
+                + (result.getStationaryDistribution() != null ? ", " + result.getStationaryDistribution() : ""));
+        if (!printEntries)
+            return;
+        for (Map.Entry<String, Double> entry : result.getRanking())
+            out.println(entry.getKey() + ", " + entry.getValue());
+    }
+}
@@ -0,0 +1,47 @@
+package pipeline;
+
+import rankAggregationMethods.MarkovChainMethods.MarkovChainRanking;
+import rankAggregationMethods.MarkovChainMethods.StationaryDistribution;
+import rankAggregationMethods.SortedRanking;
+
+/**
+ * Ranking created by one method of an AggregationPipeline
+ */
+public class PipelineResult {
+    // Name the method was added to the pipeline with, e.g. "BordaMedian"
+    private final String name;
+    // The aggregated ranking, sorted in ascending order
+    private final SortedRanking ranking;
+    // Ranking with its stationary distribution, null for the Borda methods
+    private final MarkovChainRanking markovChainRanking;
+
+    PipelineResult(String name, SortedRanking ranking, MarkovChainRanking markovChainRanking) {
+        this.name = name;
+        this.ranking = ranking;
+        this.markovChainRanking = markovChainRanking;
+    }
+
+    // Class accessors
+
+    public String getName() {
+        return name;
+    }
+
+    public SortedRanking getRanking() {
+        return ranking;
+    }
+
+    /**
+     * @return the ranking with its stationary distribution, null if the method is not a Markov Chain one
+     */
+    public MarkovChainRanking getMarkovChainRanking() {
+        return markovChainRanking;
+    }
+
+    /**
+     * @return the stationary distribution of the ranking, null if the method is not a Markov Chain one
+     */
+    public StationaryDistribution getStationaryDistribution() {
+        return markovChainRanking != null ? markovChainRanking.getStationaryDistribution() : null;
+    }
+}
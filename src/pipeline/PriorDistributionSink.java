@@ -0,0 +1,36 @@
+package pipeline;
+
+import rankAggregationMethods.MarkovChainMethods.PriorDistribution;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Keeps the stationary distribution of every Markov Chain ranking in a folder, named after the method
+ * (e.g. MC1M.prior), to warm start the next run from (check priorFile). Borda rankings are skipped
+ */
+public class PriorDistributionSink implements RankingSink {
+    // Folder the prior distributions are written in
+    private final File folder;
+
+    /**
+     * @param folder folder to write the prior distributions in, must exist
+     */
+    public PriorDistributionSink(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * @param name name of the method in the pipeline
+     * @return the file the prior distribution of the method is written to
+     */
+    public File priorFile(String name) {
+        return new File(folder, name + ".prior");
+    }
+
+    @Override
+    public void accept(PipelineResult result) throws IOException {
+        if (result.getMarkovChainRanking() != null)
+            PriorDistribution.fromRanking(result.getMarkovChainRanking()).write(priorFile(result.getName()));
+    }
+}
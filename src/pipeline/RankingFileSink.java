@@ -0,0 +1,38 @@
+package pipeline;
+
+import metrics.MetricsRegistry;
+import metrics.Stage;
+
+import java.io.*;
+import java.util.Map;
+
+/**
+ * Writes every ranking to its own file in a folder, named after the method and the number of SNPs
+ * (e.g. BordaMedian300SNPs.txt). Same format as FileOperations.writeToFile: the SNP ids without the "rs" prefix,
+ * one per line in ranking order, followed by an empty line
+ */
+public class RankingFileSink implements RankingSink {
+    // Folder the ranking files are written in
+    private final File folder;
+
+    /**
+     * @param folder folder to write the ranking files in, must exist
+     */
+    public RankingFileSink(File folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public void accept(PipelineResult result) throws IOException {
+        String filename = result.getName() + result.getRanking().size() + "SNPs" + ".txt";
+        try (Stage stage = MetricsRegistry.global().startStage("write", filename);
+             BufferedWriter writer = new BufferedWriter(new FileWriter(new File(folder, filename)))) {
+            for (Map.Entry<String, Double> entry : result.getRanking()) {
+                writer.write(entry.getKey().substring(3));
+                writer.newLine();
+            }
+            writer.newLine();
+            stage.set("elements", result.getRanking().size());
+        }
+    }
+}
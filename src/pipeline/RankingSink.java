@@ -0,0 +1,16 @@
+package pipeline;
+
+import java.io.IOException;
+
+/**
+ * Destination of the rankings of an AggregationPipeline (files, console, prior distributions...).
+ * Results are given to the sinks one at a time, from the thread that runs the pipeline, so sinks need no synchronization
+ */
+public interface RankingSink {
+    /**
+     * Takes the ranking of one method, as soon as it is computed
+     * @param result the ranking with the name of its method
+     * @throws IOException if the ranking cannot be written
+     */
+    void accept(PipelineResult result) throws IOException;
+}
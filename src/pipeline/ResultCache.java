@@ -0,0 +1,337 @@
+package pipeline;
+
+import preprocessing.IndexedRanking;
+import preprocessing.IndexedRankings;
+import preprocessing.SnpIdDictionary;
+import rankAggregationMethods.MarkovChainMethods.MarkovChainRanking;
+import rankAggregationMethods.MarkovChainMethods.StationaryDistribution;
+import rankAggregationMethods.SortedRanking;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed on-disk cache of aggregated rankings, so that running the same method with the same parameters on
+ * the same rankings again (from another script, another day) returns the stored ranking instead of computing it.
+ * The key of a ranking is a SHA-256 hash of the input rankings (SNP ids and values, in order), the method class and
+ * its parameters (e.g. p of BordaPNorm, a of the Markov Chain methods, k of a top-k ranking). Any change of the input
+ * gives another key, so stored rankings never have to be invalidated.
+ *
+ * Every ranking is a file of the cache folder named after its key. When the files take more than the size limit, the
+ * least recently used ones are deleted. Use is the modification time of the file, which is updated on every hit, so
+ * the order is kept across runs. Markov Chain rankings are stored with their stationary distribution.
+ *
+ * Layout (big endian, DataOutputStream):
+ *  magic (int), version (int), number of elements n (int), has distribution (boolean),
+ *  iterations (int), residual (double), converged (boolean), elapsed nanos (long) -- only with a distribution,
+ *  then for every element in ranking order: SNP id (modified UTF-8), score (double), probability (double, only with a
+ *  distribution)
+ */
+public class ResultCache {
+    /** Extension of the files of the cache */
+    public static final String EXTENSION = ".result";
+    private static final int MAGIC = 0x52534C54; // "RSLT"
+    private static final int VERSION = 1;
+
+    // Folder of the cached rankings
+    private final File directory;
+    // Maximum number of bytes the cached rankings may take
+    private final long maxBytes;
+    // Size of every cached ranking by key, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Bytes taken by all the cached rankings
+    private long totalBytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Opens the cache of a folder, with the rankings already in it ordered by last use
+     * @param directory folder of the cached rankings, created if it does not exist
+     * @param maxBytes maximum number of bytes the cached rankings may take, positive
+     * @throws IOException if the folder cannot be created
+     */
+    public ResultCache(File directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Size limit must be positive");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create folder " + directory);
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        File[] files = directory.listFiles();
+        List<File> cached = new ArrayList<>();
+        if (files != null)
+            for (File file : files)
+                if (file.isFile() && file.getName().endsWith(EXTENSION))
+                    cached.add(file);
+        Collections.sort(cached, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (File file : cached) {
+            String name = file.getName();
+            entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+            totalBytes += file.length();
+        }
+        evict();
+    }
+
+    // Class accessors
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return number of rankings found in the cache since it was opened
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of rankings looked for and not found since the cache was opened
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of rankings in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return bytes taken by the rankings in the cache
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Hashes the input rankings, once for all the methods applied to them
+     * @param indexedRankings the input rankings
+     * @return hash of the SNP ids and values of the rankings, in order, as hexadecimal
+     */
+    public static String hashOf(IndexedRankings indexedRankings) {
+        MessageDigest digest = sha256();
+        SnpIdDictionary dictionary = indexedRankings.getDictionary();
+        byte[] number = new byte[8];
+        update(digest, number, indexedRankings.getNumberOfRankings());
+        for (IndexedRanking ranking : indexedRankings.getRankings()) {
+            update(digest, number, ranking.size());
+            for (int p = 0; p < ranking.size(); ++p) {
+                digest.update(dictionary.getName(ranking.getIds()[p]).getBytes(StandardCharsets.UTF_8));
+                // Ids contain no NUL, so it separates them
+                digest.update((byte) 0);
+                update(digest, number, Double.doubleToLongBits(ranking.getValues()[p]));
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates the key of a ranking
+     * @param inputHash hash of the input rankings (check hashOf)
+     * @param method class of the aggregation method
+     * @param parameters everything else the ranking depends on, as "name=value" pairs
+     * @return the key of the ranking in the cache, as hexadecimal
+     */
+    public static String keyOf(String inputHash, Class<?> method, String parameters) {
+        MessageDigest digest = sha256();
+        String description = VERSION + "\n" + inputHash + "\n" + method.getName() + "\n" + parameters;
+        return toHex(digest.digest(description.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Looks for a ranking in the cache, counting the hit or miss
+     * @param key key of the ranking (check keyOf)
+     * @param name name to give the ranking in the pipeline
+     * @return the stored ranking, null if it is not in the cache or cannot be read
+     */
+    public PipelineResult get(String key, String name) {
+        File file = fileOf(key);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        PipelineResult result;
+        try {
+            result = read(file, name);
+        } catch (IOException e) {
+            // Deleted by another process or corrupted, computed again
+            remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!file.setLastModified(System.currentTimeMillis()))
+            System.out.println("Updating the use of " + file + " failed");
+        hits.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Stores a ranking in the cache, deleting the least recently used ones if the cache gets larger than its limit.
+     * The ranking is written to a temporary file that then replaces the old one, so a ranking is never seen half written
+     * @param key key of the ranking (check keyOf)
+     * @param result the ranking to store
+     * @throws IOException if the ranking cannot be written
+     */
+    public void put(String key, PipelineResult result) throws IOException {
+        Path target = fileOf(key).toPath();
+        Path temporary = Files.createTempFile(directory.toPath(), key + ".", ".tmp");
+        try {
+            write(temporary.toFile(), result);
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        synchronized (this) {
+            Long previous = entries.put(key, target.toFile().length());
+            totalBytes += target.toFile().length() - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+
+    /**
+     * Helper function, deletes the least recently used rankings until the cache fits in its limit.
+     * The ranking used last is kept even if it is larger than the limit on its own
+     */
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            File file = fileOf(eldest.getKey());
+            if (!file.delete() && file.exists())
+                System.out.println("Deleting " + file + " from the result cache failed");
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Helper function, forgets a ranking that cannot be read
+     */
+    private synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null)
+            totalBytes -= size;
+        if (!fileOf(key).delete())
+            fileOf(key).deleteOnExit();
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    /**
+     * Helper function, writes a ranking in the layout of the cache
+     */
+    private static void write(File file, PipelineResult result) throws IOException {
+        SortedRanking ranking = result.getRanking();
+        StationaryDistribution stationaryDistribution = result.getStationaryDistribution();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(ranking.size());
+            output.writeBoolean(stationaryDistribution != null);
+            if (stationaryDistribution != null) {
+                output.writeInt(stationaryDistribution.getIterations());
+                output.writeDouble(stationaryDistribution.getResidual());
+                output.writeBoolean(stationaryDistribution.isConverged());
+                output.writeLong(stationaryDistribution.getElapsedNanos());
+            }
+            for (int position = 0; position < ranking.size(); ++position) {
+                output.writeUTF(ranking.getName(position));
+                output.writeDouble(ranking.getScore(position));
+                if (stationaryDistribution != null)
+                    output.writeDouble(stationaryDistribution.getDistribution()[ranking.getElement(position)]);
+            }
+        }
+    }
+
+    /**
+     * Helper function, reads a ranking written by write. Elements are numbered in ranking order
+     */
+    private static PipelineResult read(File file, String name) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("Not a cached ranking: " + file);
+            int size = input.readInt();
+            if (size < 0)
+                throw new IOException("Corrupted cached ranking: " + file);
+            boolean hasDistribution = input.readBoolean();
+            int iterations = 0;
+            double residual = 0.0;
+            boolean converged = false;
+            long elapsedNanos = 0;
+            if (hasDistribution) {
+                iterations = input.readInt();
+                residual = input.readDouble();
+                converged = input.readBoolean();
+                elapsedNanos = input.readLong();
+            }
+
+            List<String> names = new ArrayList<>(size);
+            double[] scores = new double[size];
+            double[] distribution = hasDistribution ? new double[size] : null;
+            int[] order = new int[size];
+            for (int position = 0; position < size; ++position) {
+                names.add(input.readUTF());
+                scores[position] = input.readDouble();
+                if (hasDistribution)
+                    distribution[position] = input.readDouble();
+                order[position] = position;
+            }
+            if (input.read() != -1)
+                throw new IOException("Corrupted cached ranking: " + file);
+
+            SortedRanking ranking = SortedRanking.ofSortedOrder(names, scores, order);
+            MarkovChainRanking markovChainRanking = hasDistribution ? new MarkovChainRanking(ranking,
+                    new StationaryDistribution(distribution, iterations, residual, converged, elapsedNanos)) : null;
+            return new PipelineResult(name, ranking, markovChainRanking);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, byte[] buffer, long value) {
+        for (int i = 0; i < 8; ++i)
+            buffer[i] = (byte) (value >>> (56 - 8 * i));
+        digest.update(buffer);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes)
+            hex.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+}
@@ -1,5 +1,8 @@
 package preprocessing;
 
+import metrics.MetricsRegistry;
+import metrics.Stage;
+
 import java.io.*;
 import java.util.*;
 
@@ -102,14 +105,11 @@ public class FileOperations {
      */
     private List<String> clearInputList() {
         // List to be transformed -- Contains raw input data
-        List<String> fileLinesArrayList = new ArrayList<>(this.readRawDataFromFile());
+        List<String> rawData = this.readRawDataFromFile();
 
-        // Remove 11 first items from the list -- Useless text
-        for (int i = 0; i < 11; ++i) {
-            // Always removing the first item, since after every removal the contents are shifted one space back
-            fileLinesArrayList.remove(0);
-        }
-        return fileLinesArrayList;
+        // Skip the 11 first items of the list -- Useless text (an empty first item and the TRES header lines)
+        // Copying only the rest once, instead of removing the first item 11 times
+        return new ArrayList<>(rawData.subList(Math.min(11, rawData.size()), rawData.size()));
     }
 
     /**
@@ -118,7 +118,7 @@ public class FileOperations {
      */
     public List<SNP> fileLinesListToSNPList() {
         // List of clear input data
-        List<String> fileLinesArrayList = new ArrayList<>(this.clearInputList());
+        List<String> fileLinesArrayList = this.clearInputList();
         // Create SNP List
         List<SNP> SNPList = new ArrayList<>();
 
@@ -149,6 +149,24 @@ public class FileOperations {
         return SNPList;
     }
 
+    /**
+     * Reads the input file and turns it into a ranking of dictionary ids, interning every SNP id in the dictionary.
+     * Same result as SNP.formatIndexedOutput on fileLinesListToSNPList(), but the file is parsed in one streaming pass
+     * (check TresFileParser), without keeping its lines or creating SNP objects
+     * @param dictionary dictionary in which the SNP ids are interned
+     * @param parameter 0 to rank by SNP rank, 1 by normalized SNP score (check SNP.formatOutput)
+     * @return the ranking of the file, sorted by ascending value. Empty if the file could not be read
+     */
+    public IndexedRanking readIndexedRanking(SnpIdDictionary dictionary, int parameter) {
+        try {
+            return TresFileParser.parse(new File(inputFilename), dictionary).toIndexedRanking(parameter);
+        } catch (IOException e) {
+            System.out.println("Parsing input file failed");
+            e.printStackTrace();
+        }
+        return IndexedRanking.of(new int[0], new double[0]);
+    }
+
     /**
      * Writing a ranking list in a file. Format key value, in the sorted order (smaller to greater)
      * @param map is the structure containing the key value pairs to be written in file
@@ -159,6 +177,7 @@ public class FileOperations {
 
         // Create buffered writer
         BufferedWriter writer = null;
+        Stage stage = MetricsRegistry.global().startStage("write", outputFilename).set("elements", map.size());
         try {
             // Connect the writer to the output file
             writer = new BufferedWriter(new FileWriter(outputFile));
@@ -185,6 +204,7 @@ public class FileOperations {
                 System.out.println("Writer close problem");
                 e.printStackTrace();
             }
+            stage.close();
         }
     }
 }
@@ -0,0 +1,59 @@
+package preprocessing;
+
+import rankAggregationMethods.RankAggregationDataTransformation;
+
+/**
+ * One ranking, with its SNPs given by their SnpIdDictionary id. The SNPs are kept sorted by ascending value (best first),
+ * the same order as the maps created by SNP.formatOutput
+ */
+public class IndexedRanking {
+    // Dictionary ids of the SNPs of the ranking
+    private final int[] ids;
+    // Value (rank or normalized score) of every SNP, aligned with ids
+    private final double[] values;
+
+    private IndexedRanking(int[] ids, double[] values) {
+        this.ids = ids;
+        this.values = values;
+    }
+
+    /**
+     * Creates a ranking out of the ids and values of its SNPs, sorting them by ascending value if they are not already sorted.
+     * The arrays are used as is (not copied)
+     * @param ids dictionary ids of the SNPs
+     * @param values value of every SNP, aligned with ids
+     * @return the sorted ranking
+     */
+    public static IndexedRanking of(int[] ids, double[] values) {
+        if (ids.length != values.length)
+            throw new IllegalArgumentException("Ids and values must have the same length");
+
+        for (int p = 1; p < values.length; ++p) {
+            if (values[p] < values[p - 1]) {
+                RankAggregationDataTransformation.sortByValue(ids, values);
+                break;
+            }
+        }
+        return new IndexedRanking(ids, values);
+    }
+
+    // Class accessors
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return dictionary ids of the SNPs of the ranking, best first
+     */
+    public int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * @return values of the SNPs of the ranking, aligned with getIds()
+     */
+    public double[] getValues() {
+        return values;
+    }
+}
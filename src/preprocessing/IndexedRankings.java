@@ -0,0 +1,71 @@
+package preprocessing;
+
+import java.util.*;
+
+/**
+ * The input of the aggregation methods in integer form: a list of rankings whose SNP ids all come from the same dictionary
+ */
+public class IndexedRankings {
+    // Dictionary shared by all the rankings
+    private final SnpIdDictionary dictionary;
+    // The rankings
+    private final List<IndexedRanking> rankings;
+
+    public IndexedRankings(SnpIdDictionary dictionary, List<IndexedRanking> rankings) {
+        this.dictionary = dictionary;
+        this.rankings = Collections.unmodifiableList(new ArrayList<>(rankings));
+    }
+
+    /**
+     * Interns the SNP ids of a list of rankings in a new dictionary
+     * @param listOfRankings list that contains maps with id (String) as key and the ranking (Double) as value.
+     *                        Every one of the maps is one ranking
+     * @return the same rankings in integer form
+     */
+    public static IndexedRankings fromListOfMaps(List<Map<String, Double>> listOfRankings) {
+        SnpIdDictionary dictionary = new SnpIdDictionary();
+        List<IndexedRanking> rankings = new ArrayList<>();
+
+        for (Map<String, Double> currentMap : listOfRankings) {
+            int[] ids = new int[currentMap.size()];
+            double[] values = new double[currentMap.size()];
+            int position = 0;
+            for (Map.Entry<String, Double> entry : currentMap.entrySet()) {
+                ids[position] = dictionary.intern(entry.getKey());
+                values[position] = entry.getValue();
+                position++;
+            }
+            rankings.add(IndexedRanking.of(ids, values));
+        }
+        return new IndexedRankings(dictionary, rankings);
+    }
+
+    // Class accessors
+
+    public SnpIdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public List<IndexedRanking> getRankings() {
+        return rankings;
+    }
+
+    public int getNumberOfRankings() {
+        return rankings.size();
+    }
+
+    /**
+     * Translates the rankings back to maps of SNP id to value, sorted in ascending order, as created by SNP.formatOutput
+     * @return list of rankings with String keys
+     */
+    public List<Map<String, Double>> toListOfMaps() {
+        List<Map<String, Double>> listOfMaps = new ArrayList<>();
+        for (IndexedRanking ranking : rankings) {
+            Map<String, Double> currentMap = new LinkedHashMap<>();
+            for (int p = 0; p < ranking.size(); ++p)
+                currentMap.put(dictionary.getName(ranking.getIds()[p]), ranking.getValues()[p]);
+            listOfMaps.add(currentMap);
+        }
+        return listOfMaps;
+    }
+}
@@ -0,0 +1,264 @@
+package preprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary cache of parsed TRES files, so that unchanged input files are not parsed again on every run.
+ * The cache of a file is stored next to it (same name + EXTENSION) and holds the SNP ids, ranks and normalized scores of the
+ * file, along with the size, modification time and content hash of the file it was made from.
+ *
+ * A cache is used only if the size of the file is unchanged and either its modification time or its content hash matches.
+ * It is memory mapped and its columns copied out in bulk. SNP ids of the rs form are stored as their number, so interning
+ * them again needs neither Strings nor parsing.
+ *
+ * Layout (big endian):
+ *  magic (int), version (int), source size (long), source modification time (long), source hash (long),
+ *  number of SNPs n (int), length of the name section (int), ranks (n doubles), normalized scores (n doubles),
+ *  ids (n longs: the rs number, or -1 - i for the i-th id that is not of the rs form),
+ *  name section (length as unsigned short, then the ASCII bytes, of every id that is not of the rs form)
+ */
+public class RankingCache {
+    /** Appended to the name of a TRES file to get the name of its cache */
+    public static final String EXTENSION = ".rankcache";
+    private static final int MAGIC = 0x54524553; // "TRES"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    // The header is read into a buffer with room for the length of the cache file after it
+    private static final int LENGTH_OFFSET = HEADER_SIZE;
+    private static final int MODIFIED_OFFSET = 16;
+    private static final int HASH_OFFSET = 24;
+    private static final int MAX_ID_LENGTH = 0xFFFF;
+
+    private RankingCache() {
+        // Only static methods
+    }
+
+    /**
+     * @param inputFile a TRES file
+     * @return the file the cache of inputFile is stored in
+     */
+    public static File cacheFileOf(File inputFile) {
+        return new File(inputFile.getAbsoluteFile().getParentFile(), inputFile.getName() + EXTENSION);
+    }
+
+    /**
+     * Reads the ranking of a TRES file from its cache if the cache is valid. Otherwise parses the file and (re)writes its cache.
+     * Failing to write the cache (e.g. read only directory) is not an error, the ranking is still returned
+     * @param inputFile the file generated by TRES
+     * @param dictionary dictionary in which the SNP ids are interned
+     * @param parameter 0 to rank by SNP rank, 1 by normalized SNP score (check SNP.formatOutput)
+     * @return the ranking of the file, same as parsing it
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static IndexedRanking read(File inputFile, SnpIdDictionary dictionary, int parameter) throws IOException {
+        File cacheFile = cacheFileOf(inputFile);
+        long size = inputFile.length();
+        long modified = inputFile.lastModified();
+
+        ByteBuffer contents = null;
+        ByteBuffer header = readHeader(cacheFile);
+        if (header != null && isCacheOf(header, size)) {
+            boolean unchanged = header.getLong(MODIFIED_OFFSET) == modified;
+            if (!unchanged) {
+                // File touched but maybe not changed, compare the contents
+                contents = TresFileParser.readContents(inputFile);
+                unchanged = header.getLong(HASH_OFFSET) == contentHash(contents);
+                if (unchanged)
+                    updateModified(cacheFile, modified);
+            }
+            IndexedRanking ranking = unchanged ? load(map(cacheFile), dictionary, parameter) : null;
+            if (ranking != null)
+                return ranking;
+        }
+
+        if (contents == null)
+            contents = TresFileParser.readContents(inputFile);
+        TresRankingColumns columns = TresFileParser.parse(contents, dictionary);
+        try {
+            write(cacheFile, columns, dictionary, size, modified, contentHash(contents));
+        } catch (IOException e) {
+            System.out.println("Writing cache " + cacheFile + " failed");
+        }
+        return columns.toIndexedRanking(parameter);
+    }
+
+    /**
+     * Helper function, reads the header of a cache file, along with its length
+     * @return the header, null if there is no cache or it is shorter than a header
+     */
+    private static ByteBuffer readHeader(File cacheFile) {
+        if (!cacheFile.isFile())
+            return null;
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r")) {
+            if (file.length() < HEADER_SIZE)
+                return null;
+            byte[] header = new byte[HEADER_SIZE + 8];
+            file.readFully(header, 0, HEADER_SIZE);
+            return ByteBuffer.wrap(header).putLong(LENGTH_OFFSET, file.length());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper function, checks a cache header and that the cache was made from a file of the given size
+     */
+    private static boolean isCacheOf(ByteBuffer header, long sourceSize) {
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getLong(8) != sourceSize)
+            return false;
+        long count = header.getInt(32);
+        long nameBytes = header.getInt(36);
+        return count >= 0 && nameBytes >= 0 && HEADER_SIZE + 24 * count + nameBytes == header.getLong(LENGTH_OFFSET);
+    }
+
+    /**
+     * Helper function, creates the ranking stored in a cache whose header is valid
+     * @return the ranking, null if the id or name section of the cache is corrupted
+     */
+    private static IndexedRanking load(ByteBuffer cache, SnpIdDictionary dictionary, int parameter) {
+        int count = cache.getInt(32);
+        double[] values = new double[count];
+        cache.position(HEADER_SIZE);
+        DoubleBuffer doubles = cache.asDoubleBuffer();
+        // Ranks come first, normalized scores after them
+        if (parameter == 1)
+            doubles.position(count);
+        doubles.get(values);
+
+        long[] rsNumbers = new long[count];
+        cache.position(HEADER_SIZE + 16 * count);
+        cache.asLongBuffer().get(rsNumbers);
+
+        // Find the names first, so that a corrupted cache adds nothing to the dictionary
+        List<String> names = new ArrayList<>();
+        int position = HEADER_SIZE + 24 * count;
+        while (position + 2 <= cache.limit()) {
+            int length = cache.getShort(position) & MAX_ID_LENGTH;
+            position += 2;
+            if (position + length > cache.limit())
+                return null;
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; ++i)
+                bytes[i] = cache.get(position + i);
+            names.add(new String(bytes, StandardCharsets.ISO_8859_1));
+            position += length;
+        }
+        if (position != cache.limit())
+            return null;
+        for (long rsNumber : rsNumbers)
+            if (rsNumber < -names.size())
+                return null;
+
+        int[] ids = new int[count];
+        for (int p = 0; p < count; ++p) {
+            if (rsNumbers[p] >= 0)
+                ids[p] = dictionary.internRsNumber(rsNumbers[p]);
+            else
+                ids[p] = dictionary.intern(names.get((int) (-1 - rsNumbers[p])));
+        }
+        return IndexedRanking.of(ids, values);
+    }
+
+    /**
+     * Helper function, writes the cache of a parsed file. The cache is written to a temporary file that then replaces
+     * the old cache, so a cache is never seen half written
+     */
+    private static void write(File cacheFile, TresRankingColumns columns, SnpIdDictionary dictionary, long sourceSize,
+                              long sourceModified, long sourceHash) throws IOException {
+        int count = columns.size();
+        long[] rsNumbers = new long[count];
+        List<byte[]> names = new ArrayList<>();
+        long nameBytes = 0;
+        for (int p = 0; p < count; ++p) {
+            int id = columns.getIds()[p];
+            rsNumbers[p] = dictionary.getRsNumber(id);
+            if (rsNumbers[p] >= 0)
+                continue;
+
+            byte[] name = dictionary.getName(id).getBytes(StandardCharsets.ISO_8859_1);
+            if (name.length > MAX_ID_LENGTH)
+                throw new IOException("SNP id too long to cache");
+            rsNumbers[p] = -1 - names.size();
+            names.add(name);
+            nameBytes += 2 + name.length;
+        }
+        long length = HEADER_SIZE + 24L * count + nameBytes;
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("Ranking too large to cache");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified).putLong(sourceHash)
+                .putInt(count).putInt((int) nameBytes);
+        buffer.asDoubleBuffer().put(columns.getRanks());
+        buffer.position(HEADER_SIZE + 8 * count);
+        for (int p = 0; p < count; ++p)
+            buffer.putDouble(columns.getNormalizedAndReversedScore(p));
+        buffer.asLongBuffer().put(rsNumbers);
+        buffer.position(HEADER_SIZE + 24 * count);
+        for (byte[] name : names)
+            buffer.putShort((short) name.length).put(name);
+        buffer.flip();
+
+        Path target = cacheFile.toPath();
+        Path temporary = Files.createTempFile(target.getParent(), cacheFile.getName() + ".", EXTENSION);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Helper function, stores a new modification time in a cache whose contents are still valid
+     */
+    private static void updateModified(File cacheFile, long modified) {
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.seek(MODIFIED_OFFSET);
+            file.writeLong(modified);
+        } catch (IOException e) {
+            // Not an error, the hash is compared again next time
+        }
+    }
+
+    /**
+     * Helper function, maps a whole cache file to memory
+     */
+    private static ByteBuffer map(File cacheFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r"); FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Ranking cache too large: " + cacheFile);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Helper function, 64 bit hash of the contents of a buffer (position 0 to limit), eight bytes at a time
+     */
+    static long contentHash(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        long hash = 0xCBF29CE484222325L ^ limit;
+        int i = 0;
+        for (; i + 8 <= limit; i += 8)
+            hash = Long.rotateLeft((hash ^ buffer.getLong(i)) * 0x9E3779B97F4A7C15L, 31);
+        for (; i < limit; ++i)
+            hash = (hash ^ buffer.get(i)) * 0x100000001B3L;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,146 @@
+package preprocessing;
+
+import metrics.MetricsRegistry;
+import metrics.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads all the ranking files of an input directory concurrently.
+ * Every file is parsed on a pool thread with its own SnpIdDictionary (so nothing mutable is shared between threads),
+ * then the results are merged into one dictionary in file name order. The merged ids are therefore the same as the ones
+ * of reading the files one after the other in that order
+ */
+public class RankingFileReader {
+
+    private RankingFileReader() {
+        // Only static methods
+    }
+
+    /**
+     * Lists the files (not subdirectories or ranking caches) of a directory, sorted by name
+     * @param folder the input directory
+     * @return the files of the directory, empty if it cannot be listed
+     */
+    public static List<File> listRankingFiles(File folder) {
+        List<File> files = new ArrayList<>();
+        File[] listOfFiles = folder.listFiles();
+        if (listOfFiles == null)
+            return files;
+
+        for (File file : listOfFiles)
+            if (file.isFile() && !file.getName().endsWith(RankingCache.EXTENSION))
+                files.add(file);
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Parses TRES files concurrently and merges them into one input for the aggregation methods
+     * @param files the files to read, the rankings keep this order
+     * @param parameter 0 to rank by SNP rank, 1 by normalized SNP score (check SNP.formatOutput)
+     * @param threads maximum number of files parsed at the same time
+     * @return the rankings of all the files, ids interned in one dictionary
+     * @throws IOException if any of the files cannot be read or parsed
+     */
+    public static IndexedRankings readAll(List<File> files, int parameter, int threads) throws IOException {
+        return readAll(files, parameter, threads, false);
+    }
+
+    /**
+     * Reads TRES files concurrently and merges them into one input for the aggregation methods
+     * @param files the files to read, the rankings keep this order
+     * @param parameter 0 to rank by SNP rank, 1 by normalized SNP score (check SNP.formatOutput)
+     * @param threads maximum number of files read at the same time
+     * @param useCache true to read unchanged files from their binary cache (check RankingCache), creating it if needed
+     * @return the rankings of all the files, ids interned in one dictionary
+     * @throws IOException if any of the files cannot be read or parsed
+     */
+    public static IndexedRankings readAll(List<File> files, final int parameter, int threads, final boolean useCache)
+            throws IOException {
+        try (Stage stage = MetricsRegistry.global().startStage("parse", null)) {
+            IndexedRankings indexedRankings = readAllFiles(files, parameter, threads, useCache);
+            stage.set("files", files.size()).set("rankings", indexedRankings.getNumberOfRankings())
+                    .set("elements", indexedRankings.getDictionary().size());
+            return indexedRankings;
+        }
+    }
+
+    /**
+     * Helper function, reads the files concurrently and merges them (check readAll)
+     */
+    private static IndexedRankings readAllFiles(List<File> files, final int parameter, int threads,
+                                                final boolean useCache) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            // Start parsing all files
+            List<Future<ParsedFile>> futures = new ArrayList<>();
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<ParsedFile>() {
+                    @Override
+                    public ParsedFile call() throws IOException {
+                        SnpIdDictionary localDictionary = new SnpIdDictionary();
+                        IndexedRanking ranking = useCache ? RankingCache.read(file, localDictionary, parameter)
+                                : TresFileParser.parse(file, localDictionary).toIndexedRanking(parameter);
+                        return new ParsedFile(localDictionary, ranking);
+                    }
+                }));
+            }
+
+            // Merge them in the order of the list, as they finish
+            SnpIdDictionary dictionary = new SnpIdDictionary();
+            List<IndexedRanking> rankings = new ArrayList<>();
+            for (int i = 0; i < futures.size(); ++i) {
+                ParsedFile parsedFile = waitFor(futures.get(i), files.get(i));
+                int[] mapping = dictionary.internAll(parsedFile.dictionary);
+
+                int[] localIds = parsedFile.ranking.getIds();
+                int[] ids = new int[localIds.length];
+                for (int p = 0; p < ids.length; ++p)
+                    ids[p] = mapping[localIds[p]];
+                // Values are already sorted, only the ids change
+                rankings.add(IndexedRanking.of(ids, parsedFile.ranking.getValues()));
+            }
+            return new IndexedRankings(dictionary, rankings);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Helper function, waits for the parsing of one file, turning its failure into an IOException
+     */
+    private static ParsedFile waitFor(Future<ParsedFile> future, File file) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Parsing " + file + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing " + file, e);
+        }
+    }
+
+    /**
+     * Ranking of one file, with the dictionary its ids come from
+     */
+    private static class ParsedFile {
+        private final SnpIdDictionary dictionary;
+        private final IndexedRanking ranking;
+
+        ParsedFile(SnpIdDictionary dictionary, IndexedRanking ranking) {
+            this.dictionary = dictionary;
+            this.ranking = ranking;
+        }
+    }
+}
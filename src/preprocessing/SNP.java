@@ -1,6 +1,5 @@
 package preprocessing;
 
-import javafx.util.Pair;
 import rankAggregationMethods.RankAggregationDataTransformation;
 
 import java.util.*;
@@ -78,8 +77,8 @@ public class SNP {
     protected static void normalizeSNPScoreValues(List<SNP> SNPList) {
         // Creating a temporary list that contains all the scores of the SNPs in the list
         List<Double> scoresList = new ArrayList<>();
-        // Pair of values to store the range of the score values
-        Pair<Double, Double> rangePair;
+        // Array to store the range of the score values
+        double[] range;
 
         // Iterating through SNP List
         for(SNP currentSNP : SNPList) {
@@ -88,12 +87,12 @@ public class SNP {
         }
 
         // Finding the range of values of the scores of the list
-        rangePair = findRange(scoresList);
+        range = findRange(scoresList);
 
         // Iterating through SNP List
         for(SNP currentSNP : SNPList) {
             // Computing the normalized score for each SNP and storing it in the respective SNP field
-            currentSNP.setNormalizedScore(normaliseAValue(currentSNP.getScore(),rangePair.getKey(), rangePair.getValue()));
+            currentSNP.setNormalizedScore(normaliseAValue(currentSNP.getScore(), range[0], range[1]));
         }
     }
 
@@ -140,14 +139,20 @@ public class SNP {
     }
 
     /**
-     * Helper function that finds the minimum and maximum value of a list and returns it as a Pair object
+     * Helper function that finds the minimum and maximum value of a list, in one pass
      * @param list is the list whose minimum and maximum value we're looking for
-     * @return a Pair object Key: Minimum value
-     *                       Value: Maximum value
+     * @return an array with the minimum value at position 0 and the maximum value at position 1
      */
-    private static Pair<Double, Double> findRange(List<Double> list) {
-        // Using collections methods to get minimum and maximum values of the list
-        return new Pair<>(Collections.min(list), Collections.max(list));
+    private static double[] findRange(List<Double> list) {
+        if (list.isEmpty())
+            throw new NoSuchElementException();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : list) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return new double[] {min, max};
     }
 
     /**
@@ -193,4 +198,27 @@ public class SNP {
         }
         return RankAggregationDataTransformation.createSortedOutput(outputSNPMap);      // Return sorted
     }
+
+    /**
+     * Integer version of formatOutput. Interns the SNP ids in the given dictionary and creates a ranking of dictionary ids
+     * @param SNPList is the initial SNPList from which the ranking will be created
+     * @param parameter is the parameter based on which the field to serve as value is chosen
+     *                  0 is for SNP rank
+     *                  1 is for normalized SNP Score
+     *                  Rank is also used as default
+     * @param dictionary dictionary in which the SNP ids are interned
+     * @return the ranking of the initial list, sorted by ascending value
+     */
+    public static IndexedRanking formatIndexedOutput(List<SNP> SNPList, int parameter, SnpIdDictionary dictionary) {
+        int[] ids = new int[SNPList.size()];
+        double[] values = new double[SNPList.size()];
+
+        for (int i = 0; i < SNPList.size(); ++i) {
+            SNP currentSNP = SNPList.get(i);
+            ids[i] = dictionary.intern(currentSNP.getSNPid());
+            // Normalised score for parameter 1, rank otherwise
+            values[i] = parameter == 1 ? currentSNP.getNormalizedScore() : currentSNP.getRank();
+        }
+        return IndexedRanking.of(ids, values);      // Return sorted
+    }
 }
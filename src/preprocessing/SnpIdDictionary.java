@@ -0,0 +1,262 @@
+package preprocessing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Assigns dense integer ids (0, 1, 2, ...) to SNP ids, in the order they are first seen, so that the aggregation methods can
+ * work with array indices instead of Strings.
+ *
+ * Ids of the usual dbSNP form ("rs" followed by a number) are stored as that number in a primitive hash table, so
+ * looking them up doesn't hash or compare Strings. Any other id goes through a regular HashMap
+ */
+public class SnpIdDictionary {
+    // Value of an empty slot of the rs number table
+    private static final int EMPTY = -1;
+    // Longest number (in digits) that is surely smaller than Long.MAX_VALUE
+    private static final int MAX_RS_DIGITS = 18;
+
+    // Open addressing table: rs number -> id. Capacity is a power of 2, kept at most half full
+    private long[] rsKeys = new long[1024];
+    private int[] rsValues = filledWithEmpty(1024);
+    private int rsCount = 0;
+    // Ids that are not of the rs form -> id
+    private final Map<String, Integer> otherIds = new HashMap<>();
+
+    // rs number of every id, -1 for ids that are not of the rs form
+    private long[] rsNumbers = new long[1024];
+    // Name of every id that is not of the rs form, null for rs ids: their names are created every time they are asked
+    // for and never stored, so getName writes nothing and can be called from several threads once the ids are interned
+    private String[] names = new String[1024];
+    // Number of ids assigned so far
+    private int size = 0;
+
+    /**
+     * Returns the id of a SNP, assigning the next free id if the SNP has not been seen before
+     * @param snpId the SNP id, e.g. "rs12345"
+     * @return the dense integer id of the SNP
+     */
+    public int intern(String snpId) {
+        long rsNumber = rsNumber(snpId);
+        if (rsNumber >= 0) {
+            int id = findRs(rsNumber);
+            return id != EMPTY ? id : addRs(rsNumber);
+        }
+
+        Integer id = otherIds.get(snpId);
+        if (id == null) {
+            id = newId(-1, snpId);
+            otherIds.put(snpId, id);
+        }
+        return id;
+    }
+
+    /**
+     * Same as intern(String), for an id given as ASCII bytes (e.g. straight from a file buffer).
+     * No String is created for ids of the rs form
+     * @param buffer buffer containing the id
+     * @param start position of the first byte of the id
+     * @param end position after the last byte of the id
+     * @return the dense integer id of the SNP
+     */
+    public int intern(ByteBuffer buffer, int start, int end) {
+        long rsNumber = rsNumber(buffer, start, end);
+        if (rsNumber >= 0) {
+            int id = findRs(rsNumber);
+            return id != EMPTY ? id : addRs(rsNumber);
+        }
+
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; ++i)
+            bytes[i - start] = buffer.get(i);
+        return intern(new String(bytes, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Interns every id of another dictionary in this one, in the order of the other dictionary
+     * @param other the dictionary whose ids are interned
+     * @return array mapping every id of the other dictionary to its id in this one
+     */
+    public int[] internAll(SnpIdDictionary other) {
+        int[] mapping = new int[other.size];
+        for (int id = 0; id < other.size; ++id) {
+            long rsNumber = other.rsNumbers[id];
+            if (rsNumber >= 0) {
+                int existing = findRs(rsNumber);
+                mapping[id] = existing != EMPTY ? existing : addRs(rsNumber);
+            }
+            else
+                mapping[id] = intern(other.names[id]);
+        }
+        return mapping;
+    }
+
+    /**
+     * Same as intern("rs" + rsNumber), without creating the String
+     * @param rsNumber the number of an id of the rs form, without leading zeros
+     * @return the dense integer id of the SNP
+     */
+    int internRsNumber(long rsNumber) {
+        int id = findRs(rsNumber);
+        return id != EMPTY ? id : addRs(rsNumber);
+    }
+
+    /**
+     * @param snpId the SNP id, e.g. "rs12345"
+     * @return the id of the SNP, or -1 if it has not been interned
+     */
+    public int getId(String snpId) {
+        long rsNumber = rsNumber(snpId);
+        if (rsNumber >= 0)
+            return findRs(rsNumber);
+
+        Integer id = otherIds.get(snpId);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Looks up the name of an id without changing the dictionary, so it is safe to call concurrently as long as no id is
+     * interned at the same time
+     * @param id an id returned by intern
+     * @return the SNP id (name) with this id
+     */
+    public String getName(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("No SNP with id " + id);
+        String name = names[id];
+        return name != null ? name : "rs" + rsNumbers[id];
+    }
+
+    /**
+     * @param id an id returned by intern
+     * @return the number of the SNP id if it is of the rs form, -1 otherwise
+     */
+    long getRsNumber(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("No SNP with id " + id);
+        return rsNumbers[id];
+    }
+
+    /**
+     * @return the number of SNPs interned so far, all ids are in [0, size())
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Helper function, returns the number of an id of the form "rs" + digits, or -1 if the id does not have that form.
+     * Numbers with leading zeros are not accepted, so that the name can be recreated from the number
+     */
+    static long rsNumber(CharSequence snpId) {
+        int length = snpId.length();
+        if (length < 3 || length > 2 + MAX_RS_DIGITS || snpId.charAt(0) != 'r' || snpId.charAt(1) != 's' || snpId.charAt(2) == '0')
+            return -1;
+
+        long number = 0;
+        for (int i = 2; i < length; ++i) {
+            char digit = snpId.charAt(i);
+            if (digit < '0' || digit > '9')
+                return -1;
+            number = number * 10 + (digit - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Helper function, byte version of rsNumber(CharSequence)
+     */
+    private static long rsNumber(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length < 3 || length > 2 + MAX_RS_DIGITS || buffer.get(start) != 'r' || buffer.get(start + 1) != 's' || buffer.get(start + 2) == '0')
+            return -1;
+
+        long number = 0;
+        for (int i = start + 2; i < end; ++i) {
+            byte digit = buffer.get(i);
+            if (digit < '0' || digit > '9')
+                return -1;
+            number = number * 10 + (digit - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Helper function, slot of the rs number table where a number should be looked for first
+     */
+    private static int slotOf(long rsNumber, int mask) {
+        return (int) ((rsNumber * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Helper function, looks up an rs number in the table
+     * @return its id, or EMPTY
+     */
+    private int findRs(long rsNumber) {
+        int mask = rsKeys.length - 1;
+        for (int slot = slotOf(rsNumber, mask); rsValues[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (rsKeys[slot] == rsNumber)
+                return rsValues[slot];
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Helper function, assigns a new id to an rs number that is not in the table
+     */
+    private int addRs(long rsNumber) {
+        if (2 * (rsCount + 1) > rsKeys.length)
+            growRsTable();
+
+        int id = newId(rsNumber, null);
+        int mask = rsKeys.length - 1;
+        int slot = slotOf(rsNumber, mask);
+        while (rsValues[slot] != EMPTY)
+            slot = (slot + 1) & mask;
+        rsKeys[slot] = rsNumber;
+        rsValues[slot] = id;
+        rsCount++;
+        return id;
+    }
+
+    /**
+     * Helper function, doubles the capacity of the rs number table and reinserts its contents
+     */
+    private void growRsTable() {
+        long[] oldKeys = rsKeys;
+        int[] oldValues = rsValues;
+        rsKeys = new long[oldKeys.length * 2];
+        rsValues = filledWithEmpty(oldKeys.length * 2);
+
+        int mask = rsKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] == EMPTY)
+                continue;
+            int slot = slotOf(oldKeys[i], mask);
+            while (rsValues[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            rsKeys[slot] = oldKeys[i];
+            rsValues[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Helper function, stores the rs number and name of the next id
+     */
+    private int newId(long rsNumber, String name) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            rsNumbers = Arrays.copyOf(rsNumbers, size * 2);
+        }
+        rsNumbers[size] = rsNumber;
+        names[size] = name;
+        return size++;
+    }
+
+    private static int[] filledWithEmpty(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, EMPTY);
+        return array;
+    }
+}
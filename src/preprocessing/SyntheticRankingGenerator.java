@@ -0,0 +1,138 @@
+package preprocessing;
+
+import rankAggregationMethods.RankAggregationDataTransformation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generates synthetic rankings in the format of the files of TRES, to measure the rank aggregation methods on inputs of any
+ * size. The same seed always gives the same files.
+ *
+ * Every SNP has a hidden true score. The score of a SNP in a ranking is its true score plus noise, so the rankings agree
+ * on the order of the SNPs more or less, as the rankings of different feature selection methods do.
+ * Overlap and missingness control which SNPs every ranking contains:
+ *  - overlap: fraction of the SNPs contained in every ranking
+ *  - missingness: probability of each one of the other SNPs to be left out of a ranking
+ */
+public class SyntheticRankingGenerator {
+    // Standard deviation of the noise added to the true score (true scores are in [0.0, 1.0))
+    private static final double NOISE = 0.1;
+
+    // Seed of the random number generator
+    private final long seed;
+    // Number of SNPs in all the rankings together
+    private final int numberOfSnps;
+    // Fraction of the SNPs contained in every ranking
+    private final double overlap;
+    // Probability of a SNP that is not in every ranking to be left out of a ranking
+    private final double missingness;
+
+    /**
+     * Class constructor
+     * @param seed seed of the random number generator
+     * @param numberOfSnps number of SNPs in all the rankings together
+     * @param overlap fraction of the SNPs contained in every ranking, in [0.0, 1.0]
+     * @param missingness probability of each one of the rest of the SNPs to be left out of a ranking, in [0.0, 1.0]
+     */
+    public SyntheticRankingGenerator(long seed, int numberOfSnps, double overlap, double missingness) {
+        if (numberOfSnps < 1)
+            throw new IllegalArgumentException("At least one SNP is needed");
+        if (overlap < 0.0 || overlap > 1.0 || missingness < 0.0 || missingness > 1.0)
+            throw new IllegalArgumentException("Overlap and missingness must be in [0.0, 1.0]");
+        this.seed = seed;
+        this.numberOfSnps = numberOfSnps;
+        this.overlap = overlap;
+        this.missingness = missingness;
+    }
+
+    /**
+     * Writes the rankings in a folder, one TRES file per ranking, named ranking000.txt, ranking001.txt etc.
+     * so that they are read in the order they were generated (check RankingFileReader.listRankingFiles)
+     * @param folder folder to write the files in, created if it does not exist
+     * @param numberOfRankings number of rankings to generate
+     * @return the files written, in ranking order
+     * @throws IOException if a file cannot be written
+     */
+    public List<File> writeRankings(File folder, int numberOfRankings) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs())
+            throw new IOException("Cannot create folder " + folder);
+
+        Random random = new Random(seed);
+        double[] trueScores = new double[numberOfSnps];
+        for (int snp = 0; snp < numberOfSnps; ++snp)
+            trueScores[snp] = random.nextDouble();
+        // SNPs with index below this are in every ranking, SNP order is random anyway
+        int sharedSnps = (int) Math.round(overlap * numberOfSnps);
+
+        List<File> files = new ArrayList<>(numberOfRankings);
+        int[] snps = new int[numberOfSnps];
+        double[] scores = new double[numberOfSnps];
+        for (int ranking = 0; ranking < numberOfRankings; ++ranking) {
+            int size = 0;
+            for (int snp = 0; snp < numberOfSnps; ++snp) {
+                if (snp >= sharedSnps && random.nextDouble() < missingness)
+                    continue;
+                snps[size] = snp;
+                scores[size] = trueScores[snp] + NOISE * random.nextGaussian();
+                size++;
+            }
+
+            File file = new File(folder, String.format("ranking%03d.txt", ranking));
+            writeTresFile(file, snps, scores, size);
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Helper function, writes one ranking in the TRES format: the header lines and then one line per SNP, best (highest
+     * score) first: rank \t SNP id \t score \t number of genotyped SNPs
+     */
+    private void writeTresFile(File file, int[] snps, double[] scores, int size) throws IOException {
+        // Sorting by descending score, element index makes equal scores keep the SNP order
+        int[] order = new int[size];
+        double[] negativeScores = new double[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+            negativeScores[i] = -scores[i];
+        }
+        RankAggregationDataTransformation.sortIndicesByValue(order, negativeScores);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII),
+                1 << 16)) {
+            writer.write("Synthetic ranking, seed " + seed + "\n");
+            writer.write("SNPs: " + size + " of " + numberOfSnps + "\n");
+            for (int line = 2; line < TresFileParser.HEADER_LINES; ++line)
+                writer.write("#\n");
+
+            StringBuilder line = new StringBuilder(64);
+            for (int position = 0; position < size; ++position) {
+                int i = order[position];
+                line.setLength(0);
+                line.append(position + 1).append('\t')
+                        .append("rs").append(snps[i] + 1).append('\t');
+                appendScore(line, scores[i]);
+                line.append('\t').append(size).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    /**
+     * Helper function, appends a score with 6 decimal digits, like TRES does
+     */
+    private static void appendScore(StringBuilder line, double score) {
+        long micros = Math.round(score * 1e6);
+        if (micros < 0) {
+            line.append('-');
+            micros = -micros;
+        }
+        String fraction = Long.toString(micros % 1000000);
+        line.append(micros / 1000000).append('.');
+        for (int i = fraction.length(); i < 6; ++i)
+            line.append('0');
+        line.append(fraction);
+    }
+}
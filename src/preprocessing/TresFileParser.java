@@ -0,0 +1,219 @@
+package preprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for the files generated by TRES. Reads the file in one pass straight from a byte buffer (memory mapped for
+ * large files): skips the header lines, parses rank, SNP id and score of every line without creating line Strings or SNP
+ * objects, interns the SNP ids and keeps the range of the scores, so no second pass is needed to normalize them
+ */
+public class TresFileParser {
+    /** Number of lines at the start of a TRES file that contain no SNP information */
+    public static final int HEADER_LINES = 10;
+    // Files at least this large are memory mapped instead of read into the heap
+    private static final long MAPPING_THRESHOLD = 1 << 20;
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private TresFileParser() {
+        // Only static methods
+    }
+
+    /**
+     * Parses a TRES file
+     * @param inputFile the file generated by TRES
+     * @param dictionary dictionary in which the SNP ids are interned
+     * @return the SNP ids, ranks and scores of the file in primitive columns
+     * @throws IOException if the file cannot be read or a line is not in the TRES format
+     */
+    public static TresRankingColumns parse(File inputFile, SnpIdDictionary dictionary) throws IOException {
+        return parse(readContents(inputFile), dictionary);
+    }
+
+    /**
+     * Reads a whole file into a buffer, memory mapped for large files. The buffer stays valid after the file is closed
+     * @param inputFile the file to read
+     * @return the contents of the file, from position 0 to the limit
+     * @throws IOException if the file cannot be read
+     */
+    static ByteBuffer readContents(File inputFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(inputFile, "r"); FileChannel channel = file.getChannel()) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("File too large to parse: " + inputFile);
+
+            if (length >= MAPPING_THRESHOLD)
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Parses the contents of a TRES file, from position 0 to the limit of the buffer
+     * @param buffer the contents of the file
+     * @param dictionary dictionary in which the SNP ids are interned
+     * @return the SNP ids, ranks and scores of the file in primitive columns
+     * @throws IOException if a line is not in the TRES format
+     */
+    public static TresRankingColumns parse(ByteBuffer buffer, SnpIdDictionary dictionary) throws IOException {
+        int limit = buffer.limit();
+        int position = 0;
+
+        // Skip the header lines
+        for (int line = 0; line < HEADER_LINES && position < limit; ++line)
+            position = endOfLine(buffer, position, limit) + 1;
+
+        // Lines are about 30 bytes long, start with a capacity close to the number of lines
+        int capacity = Math.max(16, (limit - Math.min(position, limit)) / 24);
+        int[] ids = new int[capacity];
+        double[] ranks = new double[capacity];
+        double[] scores = new double[capacity];
+        double minScore = Double.POSITIVE_INFINITY;
+        double maxScore = Double.NEGATIVE_INFINITY;
+        int size = 0;
+
+        while (position < limit) {
+            int lineEnd = endOfLine(buffer, position, limit);
+            // Empty lines contain no SNP
+            if (isBlank(buffer, position, lineEnd)) {
+                position = lineEnd + 1;
+                continue;
+            }
+
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+
+            // Line format: rank \t SNP id \t score \t number of genotyped SNPs (thrown away)
+            int rankEnd = endOfField(buffer, position, lineEnd);
+            int idEnd = endOfField(buffer, rankEnd + 1, lineEnd);
+            int scoreEnd = endOfField(buffer, idEnd + 1, lineEnd);
+            if (idEnd >= lineEnd)
+                throw new IOException("Not a TRES line at byte " + position);
+
+            ranks[size] = parseDouble(buffer, position, rankEnd);
+            ids[size] = internTrimmed(buffer, rankEnd + 1, idEnd, dictionary);
+            double score = parseDouble(buffer, idEnd + 1, scoreEnd);
+            scores[size] = score;
+            minScore = Math.min(minScore, score);
+            maxScore = Math.max(maxScore, score);
+            size++;
+
+            position = lineEnd + 1;
+        }
+
+        return new TresRankingColumns(Arrays.copyOf(ids, size), Arrays.copyOf(ranks, size), Arrays.copyOf(scores, size),
+                minScore, maxScore);
+    }
+
+    /**
+     * Helper function, returns the position of the next '\n' (or the limit if there is none)
+     */
+    private static int endOfLine(ByteBuffer buffer, int position, int limit) {
+        while (position < limit && buffer.get(position) != '\n')
+            position++;
+        return position;
+    }
+
+    /**
+     * Helper function, returns the position of the next '\t' of the line (or the line end if there is none)
+     */
+    private static int endOfField(ByteBuffer buffer, int position, int lineEnd) {
+        while (position < lineEnd && buffer.get(position) != '\t')
+            position++;
+        return position;
+    }
+
+    /**
+     * Helper function, checks if a part of the buffer has only whitespace ('\r' included)
+     */
+    private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; ++i)
+            if (buffer.get(i) > ' ')
+                return false;
+        return true;
+    }
+
+    /**
+     * Helper function, interns a SNP id without its surrounding whitespace
+     */
+    private static int internTrimmed(ByteBuffer buffer, int start, int end, SnpIdDictionary dictionary) {
+        while (start < end && buffer.get(start) <= ' ')
+            start++;
+        while (end > start && buffer.get(end - 1) <= ' ')
+            end--;
+        return dictionary.intern(buffer, start, end);
+    }
+
+    /**
+     * Helper function, parses a decimal number. Plain numbers with up to 15 significant digits (like the ranks and scores
+     * of TRES) are parsed directly from the bytes, with the same result as Double.parseDouble. Anything else
+     * (exponents, NaN, long numbers) is handed to Double.parseDouble
+     */
+    private static double parseDouble(ByteBuffer buffer, int start, int end) throws IOException {
+        while (start < end && buffer.get(start) <= ' ')
+            start++;
+        while (end > start && buffer.get(end - 1) <= ' ')
+            end--;
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        boolean anyDigit = false;
+        int fractionDigits = -1;
+        boolean simple = i < end;
+        for (; i < end && simple; ++i) {
+            byte current = buffer.get(i);
+            if (current >= '0' && current <= '9') {
+                mantissa = mantissa * 10 + (current - '0');
+                anyDigit = true;
+                if (mantissa != 0)
+                    digits++;
+                if (fractionDigits >= 0)
+                    fractionDigits++;
+            }
+            else if (current == '.' && fractionDigits < 0)
+                fractionDigits = 0;
+            else
+                simple = false;
+        }
+
+        // Mantissa and power of ten both exact doubles, so the division is correctly rounded
+        if (simple && anyDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+
+        byte[] bytes = new byte[end - start];
+        for (int j = start; j < end; ++j)
+            bytes[j - start] = buffer.get(j);
+        String number = new String(bytes, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number: " + number, e);
+        }
+    }
+}
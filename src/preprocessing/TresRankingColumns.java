@@ -0,0 +1,80 @@
+package preprocessing;
+
+/**
+ * Contents of one TRES output file in primitive columns: the dictionary id, rank and raw score of every SNP, in file order,
+ * along with the range of the scores, found while parsing
+ */
+public class TresRankingColumns {
+    // Dictionary ids of the SNPs
+    private final int[] ids;
+    // Rank of every SNP
+    private final double[] ranks;
+    // Raw (not normalized) score of every SNP
+    private final double[] scores;
+    // Range of the scores
+    private final double minScore;
+    private final double maxScore;
+
+    public TresRankingColumns(int[] ids, double[] ranks, double[] scores, double minScore, double maxScore) {
+        this.ids = ids;
+        this.ranks = ranks;
+        this.scores = scores;
+        this.minScore = minScore;
+        this.maxScore = maxScore;
+    }
+
+    // Class accessors
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    public double[] getRanks() {
+        return ranks;
+    }
+
+    public double[] getScores() {
+        return scores;
+    }
+
+    public double getMinScore() {
+        return minScore;
+    }
+
+    public double getMaxScore() {
+        return maxScore;
+    }
+
+    /**
+     * Normalizes the score of one SNP to [0.0, 1.0] and reverses it, same as SNP.normalizeAndReverseSNPScoreValues
+     * @param position position of the SNP in the file
+     * @return 1 - (score - min)/(max - min)
+     */
+    public double getNormalizedAndReversedScore(int position) {
+        return 1.0 - (scores[position] - minScore) / (maxScore - minScore);
+    }
+
+    /**
+     * Creates the ranking of the file, same as SNP.formatIndexedOutput on the SNPs of the file
+     * @param parameter is the parameter based on which the field to serve as value is chosen
+     *                  0 is for SNP rank
+     *                  1 is for normalized SNP Score
+     *                  Rank is also used as default
+     * @return the ranking, sorted by ascending value
+     */
+    public IndexedRanking toIndexedRanking(int parameter) {
+        double[] values;
+        if (parameter == 1) {
+            values = new double[scores.length];
+            for (int i = 0; i < values.length; ++i)
+                values[i] = getNormalizedAndReversedScore(i);
+        }
+        else
+            values = ranks.clone();
+        return IndexedRanking.of(ids.clone(), values);
+    }
+}
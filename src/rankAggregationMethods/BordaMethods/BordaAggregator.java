@@ -0,0 +1,19 @@
+package rankAggregationMethods.BordaMethods;
+
+/**
+ * Aggregation function of a Borda method, on primitive values.
+ * The values of one element are given as a slice of an array owned by the caller, along with a scratch buffer the function
+ * may use as it likes, so aggregating many elements in a loop allocates nothing
+ */
+public interface BordaAggregator {
+
+    /**
+     * Aggregates the values values[offset, offset + length)
+     * @param values array containing the values to be aggregated, must not be modified
+     * @param offset position of the first value
+     * @param length number of values, at least 1
+     * @param scratch buffer with room for at least length values, its contents are overwritten
+     * @return the result of the aggregation
+     */
+    double aggregate(double[] values, int offset, int length, double[] scratch);
+}
@@ -1,6 +1,6 @@
 package rankAggregationMethods.BordaMethods;
 
-import java.util.List;
+import rankAggregationMethods.RankingMatrix;
 
 /**
  * Created by Katerina Intzevidou on 15-May-17.
@@ -9,19 +9,38 @@ import java.util.List;
 public class BordaGeometricMean extends BordaMethod{
 
     /**
-     * Aggregates the numbers of the input list using the geometric mean formula as its aggregation function
-     * @param numbersToBeAggregated List containing the numbers to be aggregated by this function
+     * Aggregates the numbers of the input slice using the geometric mean formula as its aggregation function.
+     * Computed in log space, exp(mean of ln(x)), so that the product of many values neither underflows nor overflows
+     * @param values array containing the numbers to be aggregated by this function
+     * @param offset position of the first number
+     * @param length number of numbers
+     * @param scratch not used
      * @return a double type value containing the result of the aggregation
      */
-    protected Double computeAggregation (List<Double> numbersToBeAggregated) {
+    public double aggregate(double[] values, int offset, int length, double[] scratch) {
         // Helper variable
-        Double product = 1.0;
+        double sumOfLogs = 0.0;
 
-        // Iterate through the list of numbers
-        for(Double currentNumber : numbersToBeAggregated)
-            // Compute the product of the numbers
-            product *= currentNumber;
+        // Iterate through the numbers
+        for (int i = offset; i < offset + length; ++i)
+            // Compute the logarithm of the product of the numbers
+            sumOfLogs += Math.log(values[i]);
 
-        return Math.pow(product, 1.0/numbersToBeAggregated.size());        // Calculate and return the geometric mean
+        return Math.exp(sumOfLogs/length);        // Calculate and return the geometric mean
+    }
+
+    @Override
+    protected boolean aggregateColumns(RankingMatrix rankingMatrix, int from, int to, double[] aggregatedValues) {
+        ColumnKernels.geometricMean(rankingMatrix, from, to, aggregatedValues);
+        return true;
+    }
+
+    /**
+     * For non negative values the geometric mean never decreases when a value increases, and is never below the smallest value
+     * @return true
+     */
+    @Override
+    protected boolean isMonotone() {
+        return true;
     }
 }
@@ -1,32 +1,106 @@
 package rankAggregationMethods.BordaMethods;
 
-import java.util.Collections;
-import java.util.List;
-
 /**
  * Created by Katerina Intzevidou on 15-May-17.
  * Email: <aintzevi@csd.auth.gr> <intz.katerina@gmail.com>
  */
 public class BordaMedian extends BordaMethod {
+    // Ranges of at most this many values are sorted instead of partitioned
+    private static final int INSERTION_SORT_SIZE = 16;
 
     /**
-     * Aggregates the numbers of the input list using median as its aggregation function
-     * @param numbersToBeAggregated input list containing the numbers to be aggregated
+     * Aggregates the numbers of the input slice using median as its aggregation function.
+     * The values are copied to the scratch buffer and the central one(s) found by selection, without sorting them all
+     * @param values array containing the numbers to be aggregated
+     * @param offset position of the first number
+     * @param length number of numbers
+     * @param scratch buffer the numbers are copied to
      * @return a double value containing the result of the aggregation
      */
-    protected Double computeAggregation(List<Double> numbersToBeAggregated) {
-        // Store list size in temporary variable (readability reasons)
-        int size = numbersToBeAggregated.size();
+    public double aggregate(double[] values, int offset, int length, double[] scratch) {
+        System.arraycopy(values, offset, scratch, 0, length);
 
-        // Sort list
-        Collections.sort(numbersToBeAggregated);
+        // Upper central element, everything before it ends up smaller or equal
+        double upper = select(scratch, length, length / 2);
 
         // Check if size is odd or even
-        if (size % 2 == 0)     // If even
+        if (length % 2 == 0) {    // If even
+            // The lower central element is the largest of the ones before the upper one
+            double lower = scratch[0];
+            for (int i = 1; i < length / 2; ++i)
+                if (Double.compare(scratch[i], lower) > 0)
+                    lower = scratch[i];
             // Return the mean value of the two "central" elements
-            return (numbersToBeAggregated.get(size/2 - 1) + numbersToBeAggregated.get(size/2))/2;
+            return (lower + upper) / 2;
+        }
         else
             // Return the one central value
-            return numbersToBeAggregated.get(size/2);
+            return upper;
+    }
+
+    /**
+     * Helper function, finds the element that would be at position k if buffer[0, length) was sorted (quickselect),
+     * partially reordering the buffer so that the elements before position k are smaller or equal to it.
+     * Elements are compared as Double.compare does, the same order as sorting the boxed values
+     */
+    private static double select(double[] buffer, int length, int k) {
+        int from = 0;
+        int to = length - 1;
+        while (to - from > INSERTION_SORT_SIZE) {
+            // Median of three as pivot
+            int middle = (from + to) >>> 1;
+            if (Double.compare(buffer[middle], buffer[from]) < 0)
+                swap(buffer, middle, from);
+            if (Double.compare(buffer[to], buffer[from]) < 0)
+                swap(buffer, to, from);
+            if (Double.compare(buffer[to], buffer[middle]) < 0)
+                swap(buffer, to, middle);
+            double pivot = buffer[middle];
+
+            // Hoare partition: [from, j] <= pivot <= [i, to]
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (Double.compare(buffer[i], pivot) < 0)
+                    i++;
+                while (Double.compare(buffer[j], pivot) > 0)
+                    j--;
+                if (i <= j)
+                    swap(buffer, i++, j--);
+            }
+            if (k <= j)
+                to = j;
+            else if (k >= i)
+                from = i;
+            else
+                return buffer[k];
+        }
+
+        // Few elements left, sort them
+        for (int i = from + 1; i <= to; ++i) {
+            double value = buffer[i];
+            int j = i - 1;
+            while (j >= from && Double.compare(buffer[j], value) > 0) {
+                buffer[j + 1] = buffer[j];
+                j--;
+            }
+            buffer[j + 1] = value;
+        }
+        return buffer[k];
+    }
+
+    private static void swap(double[] buffer, int a, int b) {
+        double value = buffer[a];
+        buffer[a] = buffer[b];
+        buffer[b] = value;
+    }
+
+    /**
+     * The median never decreases when a value increases, and is never below the smallest value
+     * @return true
+     */
+    @Override
+    protected boolean isMonotone() {
+        return true;
     }
 }
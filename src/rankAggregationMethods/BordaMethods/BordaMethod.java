@@ -1,38 +1,145 @@
 package rankAggregationMethods.BordaMethods;
 
+import metrics.MetricsRegistry;
+import metrics.Stage;
+import preprocessing.IndexedRankings;
+import rankAggregationMethods.BoundedRanking;
 import rankAggregationMethods.RankAggregationDataTransformation;
+import rankAggregationMethods.RankingMatrix;
+import rankAggregationMethods.SortedRanking;
 
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Created by Katerina Intzevidou on 19-May-17.
  * Email: <aintzevi@csd.auth.gr> <intz.katerina@gmail.com>
  */
-public abstract class BordaMethod {
+public abstract class BordaMethod implements BordaAggregator {
+    // Number of elements below which an aggregation task is not split any further
+    private static final int PARALLEL_CHUNK_SIZE = 4096;
+
     /**
      * Creates a new ranking from the aggregation of the ranks of each element in the ranking system
-     * Starts with a list of ranking systems, turns it into a map containing the id of every element
-     * and all its rank values, then aggregates these values and returns a map with the id of the element
-     * and its new rank value in the aggregated rank
-     * @param listOfRankings list that contains maps with id (String) as key and the ranking (Double) as value
-     *                       Every one of the maps is one ranking
-     * @return Map containing the id as key and the aggregated result (new rank) as value
-     */
-    private Map<String, Double> doTheAggregation (List<Map<String, Double>> listOfRankings) {
-        // Map to store the output ranking
-        Map<String, Double> outputRanking = new LinkedHashMap<>();
-
-        // From list of rankings to map of elements and all their ranking values
-        Map<String, List<Double>> elementsAndRankingsMap = transformRankingsForAggregation(listOfRankings);
-
-        // Iterating through map of elements and their rankings
-        for(Map.Entry<String, List<Double>> currentElement : elementsAndRankingsMap.entrySet()) {
-            // Add the current element id and the result of the aggregation of its rank values to the output map
-            outputRanking.put(currentElement.getKey(), computeAggregation(currentElement.getValue()));
+     * Starts from the columnar form of the rankings, collects all the rank values of every element,
+     * then aggregates these values
+     * @param rankingMatrix the rankings in columnar form
+     * @param pool pool to aggregate the elements in parallel with, null to aggregate them in the calling thread
+     * @return the aggregated result (new rank) of every element, by element index
+     */
+    private double[] doTheAggregation (RankingMatrix rankingMatrix, ForkJoinPool pool) {
+        return doTheAggregation(new BordaMethod[] {this}, rankingMatrix, pool)[0];
+    }
+
+    /**
+     * Helper function, aggregates the rankings with several methods in one pass over the elements
+     * @param methods the Borda methods to apply
+     * @param rankingMatrix the rankings in columnar form
+     * @param pool pool to aggregate the elements in parallel with, null to aggregate them in the calling thread
+     * @return the aggregated result of every element, by element index, for every method
+     */
+    private static double[][] doTheAggregation(BordaMethod[] methods, RankingMatrix rankingMatrix, ForkJoinPool pool) {
+        // Aggregated value of every element, for every method
+        double[][] aggregatedValues = new double[methods.length][rankingMatrix.getNumberOfElements()];
+        int size = rankingMatrix.getNumberOfElements();
+
+        try (Stage stage = MetricsRegistry.global().startStage("aggregate", namesOf(methods))) {
+            if (pool == null)
+                aggregateElements(methods, rankingMatrix, 0, size, aggregatedValues);
+            else
+                pool.invoke(new AggregationTask(methods, rankingMatrix, 0, size, aggregatedValues));
+            stage.set("elements", size).set("rankings", rankingMatrix.getNumberOfRankings())
+                    .set("methods", methods.length);
+        }
+        return aggregatedValues;
+    }
+
+    /**
+     * Helper function, sorts the elements by their aggregated value, recording the sort
+     */
+    private static SortedRanking sorted(RankingMatrix rankingMatrix, double[] aggregatedValues, BordaMethod method) {
+        try (Stage stage = MetricsRegistry.global().startStage("sort", method.getClass().getSimpleName())) {
+            stage.set("elements", aggregatedValues.length);
+            return SortedRanking.sort(rankingMatrix, aggregatedValues);
+        }
+    }
+
+    /**
+     * Helper function, names of the methods in the metrics recorded, comma separated
+     */
+    private static String namesOf(BordaMethod[] methods) {
+        StringBuilder names = new StringBuilder();
+        for (BordaMethod method : methods)
+            names.append(names.length() == 0 ? "" : ",").append(method.getClass().getSimpleName());
+        return names.toString();
+    }
+
+    /**
+     * Helper function, aggregates the values of the elements in [from, to) with every method, one chunk of elements at a
+     * time: the methods with a column-wise form sweep the columns of the chunk, then the values of every element of the chunk
+     * are gathered once and given to all the other methods
+     * @param aggregatedValues arrays to store the result of the aggregation of every element in, one per method
+     */
+    private static void aggregateElements(BordaMethod[] methods, RankingMatrix rankingMatrix, int from, int to,
+                                          double[][] aggregatedValues) {
+        // Buffers for the values of one element, reused for all of them
+        double[] values = new double[rankingMatrix.getNumberOfRankings()];
+        double[] scratch = new double[values.length];
+        // Methods that aggregate one element at a time
+        boolean[] elementWise = new boolean[methods.length];
+
+        for (int chunkStart = from; chunkStart < to; chunkStart += PARALLEL_CHUNK_SIZE) {
+            int chunkEnd = Math.min(to, chunkStart + PARALLEL_CHUNK_SIZE);
+            boolean anyElementWise = false;
+            for (int m = 0; m < methods.length; ++m) {
+                elementWise[m] = !methods[m].aggregateColumns(rankingMatrix, chunkStart, chunkEnd, aggregatedValues[m]);
+                anyElementWise |= elementWise[m];
+            }
+            if (!anyElementWise)
+                continue;
+
+            // Iterating through the elements
+            for (int element = chunkStart; element < chunkEnd; ++element) {
+                // All the ranking values of the current element
+                int count = rankingMatrix.copyValuesOf(element, values);
+                for (int m = 0; m < methods.length; ++m)
+                    if (elementWise[m])
+                        aggregatedValues[m][element] = methods[m].aggregate(values, 0, count, scratch);
+            }
+        }
+    }
+
+    /**
+     * Fork/join task aggregating a range of elements, splitting it in halves until it is small enough
+     */
+    private static class AggregationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BordaMethod[] methods;
+        private final RankingMatrix rankingMatrix;
+        private final int from;
+        private final int to;
+        private final double[][] aggregatedValues;
+
+        AggregationTask(BordaMethod[] methods, RankingMatrix rankingMatrix, int from, int to, double[][] aggregatedValues) {
+            this.methods = methods;
+            this.rankingMatrix = rankingMatrix;
+            this.from = from;
+            this.to = to;
+            this.aggregatedValues = aggregatedValues;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CHUNK_SIZE) {
+                aggregateElements(methods, rankingMatrix, from, to, aggregatedValues);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AggregationTask(methods, rankingMatrix, from, middle, aggregatedValues),
+                    new AggregationTask(methods, rankingMatrix, middle, to, aggregatedValues));
         }
-        return outputRanking;
     }
 
     /**
@@ -48,11 +155,112 @@ public abstract class BordaMethod {
     }
 
     /**
-     * Computes the aggregation using a method specific to each subclass
+     * Computes the aggregation of a list of values, using the aggregate method specific to each subclass
      * @param numbersToBeAggregated list containing the values to be aggregated
      * @return the result of the aggregation
      */
-    protected abstract Double computeAggregation(List<Double> numbersToBeAggregated);
+    protected Double computeAggregation(List<Double> numbersToBeAggregated) {
+        double[] values = new double[numbersToBeAggregated.size()];
+        for (int i = 0; i < values.length; ++i)
+            values[i] = numbersToBeAggregated.get(i);
+        return aggregate(values, 0, values.length, new double[values.length]);
+    }
+
+    /**
+     * Column-wise form of the aggregation, for methods whose aggregation can be computed ranking by ranking over many
+     * elements at once (check ColumnKernels). Must give exactly the same values as aggregate
+     * @param rankingMatrix the rankings in columnar form
+     * @param from first element to aggregate
+     * @param to element after the last one to aggregate
+     * @param aggregatedValues array to store the result of the aggregation of every element in
+     * @return false if the method has no column-wise form (the default), then the elements are aggregated one at a time
+     */
+    protected boolean aggregateColumns(RankingMatrix rankingMatrix, int from, int to, double[] aggregatedValues) {
+        return false;
+    }
+
+    /**
+     * Tells if the aggregation can be used for the top-k threshold algorithm: the result must never decrease when one of
+     * the values increases, and must never be smaller than the aggregation of the smallest of the values on its own.
+     * Only asked for inputs without negative values
+     * @return true if the aggregation function has these properties, false by default
+     */
+    protected boolean isMonotone() {
+        return false;
+    }
+
+    /**
+     * Describes the parameters the aggregation depends on, so that results of the same method with different parameters
+     * are told apart (e.g. in the keys of ResultCache)
+     * @return the parameters as "name=value" pairs, comma separated. Empty for the methods without parameters
+     */
+    public String getParameters() {
+        return "";
+    }
+
+    /**
+     * Helper function, finds the k best (smallest) aggregated values with the threshold algorithm [Fagin et al., 2003].
+     * The rankings are read in sorted order, one depth at a time. The first time an element is seen its values are looked up
+     * in all the rankings and aggregated. Elements not seen yet have, in every ranking they are in, a value at least as large
+     * as the one at the current depth, so their aggregation cannot be smaller than a threshold computed from these values.
+     * Reading stops as soon as the k-th best aggregation found is smaller than the threshold
+     * @return the k best elements, sorted by aggregated value (ties by element index)
+     */
+    private BoundedRanking thresholdAggregation(RankingMatrix rankingMatrix, int k) {
+        int numberOfRankings = rankingMatrix.getNumberOfRankings();
+        // Rankings that contain all the elements: then every unseen element is in all of them
+        boolean complete = true;
+        int maxDepth = 0;
+        for (int r = 0; r < numberOfRankings; ++r) {
+            int length = rankingMatrix.getOrder(r).length;
+            complete &= length == rankingMatrix.getNumberOfElements();
+            maxDepth = Math.max(maxDepth, length);
+        }
+
+        BoundedRanking best = new BoundedRanking(k);
+        long[] seen = new long[(rankingMatrix.getNumberOfElements() + 63) >>> 6];
+        double[] values = new double[numberOfRankings];
+        double[] scratch = new double[numberOfRankings];
+        double[] thresholdValues = new double[numberOfRankings];
+
+        for (int depth = 0; depth < maxDepth; ++depth) {
+            // Sorted access: the elements at this depth of every ranking
+            for (int r = 0; r < numberOfRankings; ++r) {
+                int[] order = rankingMatrix.getOrder(r);
+                if (depth >= order.length)
+                    continue;
+                int element = order[depth];
+                if ((seen[element >>> 6] & (1L << element)) != 0)
+                    continue;
+                seen[element >>> 6] |= 1L << element;
+
+                // Random access: all the values of the element
+                int count = rankingMatrix.copyValuesOf(element, values);
+                best.offer(element, aggregate(values, 0, count, scratch));
+            }
+
+            if (!best.isFull() || depth + 1 >= maxDepth)
+                continue;
+
+            // Threshold: lowest aggregation an unseen element can have. Unseen elements are in none of the exhausted rankings
+            double threshold = Double.POSITIVE_INFINITY;
+            int count = 0;
+            for (int r = 0; r < numberOfRankings; ++r) {
+                if (depth + 1 >= rankingMatrix.getOrder(r).length)
+                    continue;
+                thresholdValues[count] = rankingMatrix.getSortedValues(r)[depth];
+                if (!complete)
+                    threshold = Math.min(threshold, aggregate(thresholdValues, count, 1, scratch));
+                count++;
+            }
+            if (complete)
+                threshold = aggregate(thresholdValues, 0, count, scratch);
+
+            if (best.worstValue() < threshold)
+                break;
+        }
+        return best;
+    }
 
     /**
      * Gets the input list of rankings and returns the new, aggregated rank, based on one of the Borda Methods
@@ -60,6 +268,133 @@ public abstract class BordaMethod {
      * @return the new ranking created, sorted in ascending order
      */
     public Map<String, Double> getBordaMethodRanking(List<Map<String, Double>> listOfRankings) {
-        return RankAggregationDataTransformation.createSortedOutput(doTheAggregation(listOfRankings));
+        return getBordaMethodRanking(RankingMatrix.fromListOfMaps(listOfRankings));
+    }
+
+    /**
+     * Gets the input rankings in integer form and returns the new, aggregated rank, based on one of the Borda Methods
+     * @param indexedRankings input rankings, SNP ids interned in a SnpIdDictionary
+     * @return the new ranking created, sorted in ascending order
+     */
+    public Map<String, Double> getBordaMethodRanking(IndexedRankings indexedRankings) {
+        return getBordaMethodRanking(RankingMatrix.fromIndexedRankings(indexedRankings));
+    }
+
+    /**
+     * Gets the input rankings in columnar form and returns the new, aggregated rank, based on one of the Borda Methods.
+     * SNP names are only looked up to create the output
+     * @param rankingMatrix input rankings
+     * @return the new ranking created, sorted in ascending order
+     */
+    public Map<String, Double> getBordaMethodRanking(RankingMatrix rankingMatrix) {
+        return getSortedBordaMethodRanking(rankingMatrix, null).toMap();
+    }
+
+    /**
+     * Parallel version of getBordaMethodRanking. The elements are split in chunks that are aggregated in the given pool.
+     * The output is exactly the same as the one of the sequential version
+     * @param rankingMatrix input rankings
+     * @param pool pool to run the aggregation in, e.g. ForkJoinPool.commonPool() or a pool with a chosen parallelism
+     * @return the new ranking created, sorted in ascending order
+     */
+    public Map<String, Double> getBordaMethodRanking(RankingMatrix rankingMatrix, ForkJoinPool pool) {
+        return getSortedBordaMethodRanking(rankingMatrix, pool).toMap();
+    }
+
+    /**
+     * Same as getBordaMethodRanking, returning the ranking in primitive form: no map is created and SNP names are only
+     * looked up when the ranking is iterated
+     * @param rankingMatrix input rankings
+     * @param pool pool to run the aggregation in, null to aggregate in the calling thread
+     * @return the new ranking created, sorted in ascending order
+     */
+    public SortedRanking getSortedBordaMethodRanking(RankingMatrix rankingMatrix, ForkJoinPool pool) {
+        return sorted(rankingMatrix, doTheAggregation(rankingMatrix, pool), this);
+    }
+
+    /**
+     * Gets the input rankings in columnar form and returns only the k best elements of the aggregated rank.
+     * For the monotone aggregations (check isMonotone) the threshold algorithm is used, which stops reading the sorted
+     * rankings as soon as the k-th aggregated value can no longer be beaten, so usually only the top of every ranking is
+     * aggregated. Otherwise all the elements are aggregated and the k best kept in a bounded heap.
+     * The output is the same as the first k entries of getBordaMethodRanking
+     * @param rankingMatrix input rankings
+     * @param k number of elements wanted
+     * @return the k best elements, sorted in ascending order
+     */
+    public Map<String, Double> getTopKBordaMethodRanking(RankingMatrix rankingMatrix, int k) {
+        return getSortedTopKBordaMethodRanking(rankingMatrix, k).toMap();
+    }
+
+    /**
+     * Same as getTopKBordaMethodRanking(RankingMatrix, int), returning the ranking in primitive form: no map is created
+     * and SNP names are only looked up when the ranking is iterated
+     * @param rankingMatrix input rankings
+     * @param k number of elements wanted
+     * @return the k best elements, sorted in ascending order
+     */
+    public SortedRanking getSortedTopKBordaMethodRanking(RankingMatrix rankingMatrix, int k) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+
+        // Aggregate everything, keeping the k best in a bounded heap
+        if (k >= rankingMatrix.getNumberOfElements() || !isMonotone() || hasNegativeValues(rankingMatrix))
+            return SortedRanking.topK(rankingMatrix, doTheAggregation(rankingMatrix, null), k);
+
+        return SortedRanking.ofBest(rankingMatrix.getElementNames(), thresholdAggregation(rankingMatrix, k));
+    }
+
+    /**
+     * Indexed version of getTopKBordaMethodRanking(RankingMatrix, int)
+     * @param indexedRankings input rankings, SNP ids interned in a SnpIdDictionary
+     * @param k number of elements wanted
+     * @return the k best elements, sorted in ascending order
+     */
+    public Map<String, Double> getTopKBordaMethodRanking(IndexedRankings indexedRankings, int k) {
+        return getTopKBordaMethodRanking(RankingMatrix.fromIndexedRankings(indexedRankings), k);
+    }
+
+    /**
+     * Helper function, checks if any of the rankings has a negative value (the smallest value of every ranking is its first)
+     */
+    private static boolean hasNegativeValues(RankingMatrix rankingMatrix) {
+        for (int r = 0; r < rankingMatrix.getNumberOfRankings(); ++r) {
+            double[] sortedValues = rankingMatrix.getSortedValues(r);
+            if (sortedValues.length > 0 && sortedValues[0] < 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Applies several Borda methods to the same rankings in one pass: the input is transformed once and the values of
+     * every element are gathered once for all the methods. Every ranking is the same as the one of getBordaMethodRanking
+     * of its method
+     * @param methods the Borda methods to apply
+     * @param indexedRankings input rankings, SNP ids interned in a SnpIdDictionary
+     * @param pool pool to run the aggregation in, null to aggregate in the calling thread
+     * @return the new ranking of every method, sorted in ascending order, in the order of the methods
+     */
+    public static List<SortedRanking> getBordaMethodRankings(List<? extends BordaMethod> methods,
+                                                             IndexedRankings indexedRankings, ForkJoinPool pool) {
+        return getBordaMethodRankings(methods, RankingMatrix.fromIndexedRankings(indexedRankings), pool);
+    }
+
+    /**
+     * Applies several Borda methods to the same rankings in one pass (check getBordaMethodRankings(List, IndexedRankings,
+     * ForkJoinPool))
+     * @param methods the Borda methods to apply
+     * @param rankingMatrix input rankings
+     * @param pool pool to run the aggregation in, null to aggregate in the calling thread
+     * @return the new ranking of every method, sorted in ascending order, in the order of the methods
+     */
+    public static List<SortedRanking> getBordaMethodRankings(List<? extends BordaMethod> methods,
+                                                             RankingMatrix rankingMatrix, ForkJoinPool pool) {
+        double[][] aggregatedValues = doTheAggregation(methods.toArray(new BordaMethod[methods.size()]), rankingMatrix, pool);
+
+        List<SortedRanking> rankings = new ArrayList<>(methods.size());
+        for (int i = 0; i < aggregatedValues.length; ++i)
+            rankings.add(sorted(rankingMatrix, aggregatedValues[i], methods.get(i)));
+        return rankings;
     }
 }
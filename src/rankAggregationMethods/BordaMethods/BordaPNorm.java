@@ -1,6 +1,6 @@
 package rankAggregationMethods.BordaMethods;
 
-import java.util.List;
+import rankAggregationMethods.RankingMatrix;
 
 /**
  * Created by Katerina Intzevidou on 15-May-17.
@@ -8,7 +8,7 @@ import java.util.List;
  */
 public class BordaPNorm extends BordaMethod {
 
-    private Double p;
+    private final double p;
 
     /**
      * Class constructor
@@ -19,20 +19,50 @@ public class BordaPNorm extends BordaMethod {
         this.p = p;
     }
 
+    // Class accessors
+
+    public double getP() {
+        return p;
+    }
+
     /**
-     * Aggregates the numbers of the input list using p-Norm as its aggregation function
-     * @param numbersToBeAggregated input list containing the numbers to be aggregated
+     * Aggregates the numbers of the input slice using p-Norm as its aggregation function
+     * @param values array containing the numbers to be aggregated
+     * @param offset position of the first number
+     * @param length number of numbers
+     * @param scratch not used
      * @return a double value containing the result of the aggregation
      */
-    protected Double computeAggregation(List<Double> numbersToBeAggregated) {
+    public double aggregate(double[] values, int offset, int length, double[] scratch) {
         // Helper variable
         double sum = 0.0;
 
-        // Iterate through the list numbers
-        for (Double currentNumber : numbersToBeAggregated)
-            sum += Math.pow(currentNumber, p);      // Get the sum of the numbers on power p
+        // Iterate through the numbers
+        for (int i = offset; i < offset + length; ++i)
+            sum += Math.pow(values[i], p);      // Get the sum of the numbers on power p
 
         //p-norm formula (Lin, 2010): value = sum of (rankings power of p) divided by number of rankings
-        return sum/numbersToBeAggregated.size();       // Calculate p-norm
+        return sum/length;       // Calculate p-norm
+    }
+
+    @Override
+    protected boolean aggregateColumns(RankingMatrix rankingMatrix, int from, int to, double[] aggregatedValues) {
+        ColumnKernels.powerMean(rankingMatrix, p, from, to, aggregatedValues);
+        return true;
+    }
+
+    /**
+     * For non negative values and p > 0, x^p increases with x, so the mean of the powers never decreases when a value
+     * increases and is never below the power of the smallest value
+     * @return true if p > 0
+     */
+    @Override
+    protected boolean isMonotone() {
+        return p > 0;
+    }
+
+    @Override
+    public String getParameters() {
+        return "p=" + p;
     }
 }
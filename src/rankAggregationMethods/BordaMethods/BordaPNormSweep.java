@@ -0,0 +1,176 @@
+package rankAggregationMethods.BordaMethods;
+
+import metrics.MetricsRegistry;
+import metrics.Stage;
+import preprocessing.IndexedRankings;
+import rankAggregationMethods.RankingMatrix;
+import rankAggregationMethods.SortedRanking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies BordaPNorm with many values of p to the same rankings at once, e.g. to pick the p that gives the best subset
+ * of features. The rankings are transformed once, the logarithm of every value is computed once, and every power is
+ * then x^p = exp(p * ln(x)), one exponential instead of a Math.pow per value and p.
+ *
+ * The columns are swept over blocks of elements like ColumnKernels.powerMean: the logarithms of a block of a column are
+ * computed into a buffer, then added, raised to every p, to the accumulators of the block, which stay in the cache.
+ *
+ * Results are the same as BordaPNorm up to rounding (relative difference of the order of |p ln(x)| * 1e-16), so elements
+ * whose aggregated values are equal or almost equal may be ordered differently. p = 1 and p = 0 give exactly the same
+ * values as BordaPNorm, and values that are not positive are raised with Math.pow
+ */
+public class BordaPNormSweep {
+    // Elements per block, so that the accumulators of all the p values of a block stay in the cache
+    private static final int BLOCK_SIZE = 1024;
+
+    // The values of p, in the order of the rankings created
+    private final double[] ps;
+
+    /**
+     * @param ps the values of p to apply, at least one
+     */
+    public BordaPNormSweep(double[] ps) {
+        if (ps.length == 0)
+            throw new IllegalArgumentException("At least one value of p is needed");
+        this.ps = ps.clone();
+    }
+
+    // Class accessors
+
+    public double[] getPs() {
+        return ps.clone();
+    }
+
+    /**
+     * Creates the BordaPNorm ranking of every p
+     * @param indexedRankings input rankings, SNP ids interned in a SnpIdDictionary
+     * @return the new ranking of every p, sorted in ascending order, in the order of the p values
+     */
+    public List<SortedRanking> getRankings(IndexedRankings indexedRankings) {
+        return getRankings(RankingMatrix.fromIndexedRankings(indexedRankings));
+    }
+
+    /**
+     * Creates the BordaPNorm ranking of every p
+     * @param rankingMatrix input rankings
+     * @return the new ranking of every p, sorted in ascending order, in the order of the p values
+     */
+    public List<SortedRanking> getRankings(RankingMatrix rankingMatrix) {
+        return sort(rankingMatrix, aggregate(rankingMatrix), 0);
+    }
+
+    /**
+     * Creates the BordaPNorm ranking of every p, keeping only its k best elements (bounded heap, no full sort)
+     * @param indexedRankings input rankings, SNP ids interned in a SnpIdDictionary
+     * @param k number of elements wanted, positive
+     * @return the k best elements of every p, sorted in ascending order, in the order of the p values
+     */
+    public List<SortedRanking> getTopKRankings(IndexedRankings indexedRankings, int k) {
+        return getTopKRankings(RankingMatrix.fromIndexedRankings(indexedRankings), k);
+    }
+
+    /**
+     * Creates the BordaPNorm ranking of every p, keeping only its k best elements (bounded heap, no full sort)
+     * @param rankingMatrix input rankings
+     * @param k number of elements wanted, positive
+     * @return the k best elements of every p, sorted in ascending order, in the order of the p values
+     */
+    public List<SortedRanking> getTopKRankings(RankingMatrix rankingMatrix, int k) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+        return sort(rankingMatrix, aggregate(rankingMatrix), k);
+    }
+
+    /**
+     * Computes the mean of x^p of the values of every element, for every p, in one sweep over the columns
+     * @param rankingMatrix input rankings
+     * @return the aggregated value of every element, by element index, for every p
+     */
+    public double[][] aggregate(RankingMatrix rankingMatrix) {
+        int size = rankingMatrix.getNumberOfElements();
+        double[][] aggregatedValues = new double[ps.length][size];
+
+        try (Stage stage = MetricsRegistry.global().startStage("aggregate", "BordaPNormSweep")) {
+            // Accumulators of every p, and the logarithms of one column, for one block of elements
+            double[][] sums = new double[ps.length][BLOCK_SIZE];
+            int[] counts = new int[BLOCK_SIZE];
+            double[] logarithms = new double[BLOCK_SIZE];
+            boolean[] present = new boolean[BLOCK_SIZE];
+
+            for (int blockStart = 0; blockStart < size; blockStart += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, size - blockStart);
+                for (double[] currentSums : sums)
+                    Arrays.fill(currentSums, 0, length, 0.0);
+                Arrays.fill(counts, 0, length, 0);
+
+                for (int k = 0; k < rankingMatrix.getNumberOfRankings(); ++k) {
+                    double[] column = rankingMatrix.getColumn(k);
+                    long[] presence = rankingMatrix.getPresence(k);
+                    // Logarithms of the block of the column, once for all the p values
+                    for (int i = 0; i < length; ++i) {
+                        int element = blockStart + i;
+                        present[i] = (presence[element >>> 6] & (1L << element)) != 0;
+                        if (present[i]) {
+                            logarithms[i] = Math.log(column[element]);
+                            counts[i]++;
+                        }
+                    }
+
+                    for (int j = 0; j < ps.length; ++j)
+                        addPowers(column, blockStart, length, present, logarithms, ps[j], sums[j]);
+                }
+
+                for (int j = 0; j < ps.length; ++j)
+                    for (int i = 0; i < length; ++i)
+                        aggregatedValues[j][blockStart + i] = sums[j][i] / counts[i];
+            }
+            stage.set("elements", size).set("rankings", rankingMatrix.getNumberOfRankings()).set("pValues", ps.length);
+        }
+        return aggregatedValues;
+    }
+
+    /**
+     * Helper function, adds x^p of the present values of a block of a column to the accumulators of the block.
+     * Values are added in ranking order, like ColumnKernels.powerMean
+     */
+    private static void addPowers(double[] column, int blockStart, int length, boolean[] present, double[] logarithms,
+                                  double p, double[] sums) {
+        // Math.pow(x, 1.0) is x and Math.pow(x, 0.0) is 1, exactly
+        if (p == 1.0) {
+            for (int i = 0; i < length; ++i)
+                if (present[i])
+                    sums[i] += column[blockStart + i];
+        }
+        else if (p == 0.0) {
+            for (int i = 0; i < length; ++i)
+                if (present[i])
+                    sums[i] += 1.0;
+        }
+        else {
+            for (int i = 0; i < length; ++i) {
+                if (!present[i])
+                    continue;
+                double value = column[blockStart + i];
+                sums[i] += value > 0 ? Math.exp(p * logarithms[i]) : Math.pow(value, p);
+            }
+        }
+    }
+
+    /**
+     * Helper function, sorts the elements by their aggregated value for every p
+     * @param k number of elements to keep, 0 for all of them
+     */
+    private List<SortedRanking> sort(RankingMatrix rankingMatrix, double[][] aggregatedValues, int k) {
+        List<SortedRanking> rankings = new ArrayList<>(ps.length);
+        try (Stage stage = MetricsRegistry.global().startStage("sort", "BordaPNormSweep")) {
+            for (double[] currentValues : aggregatedValues)
+                rankings.add(k > 0 ? SortedRanking.topK(rankingMatrix, currentValues, k)
+                        : SortedRanking.sort(rankingMatrix, currentValues));
+            stage.set("elements", rankingMatrix.getNumberOfElements()).set("pValues", ps.length);
+        }
+        return rankings;
+    }
+}
@@ -0,0 +1,110 @@
+package rankAggregationMethods.BordaMethods;
+
+import rankAggregationMethods.RankingMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Column-wise kernels for the Borda methods whose aggregation is a sum over the values of an element (geometric mean in log
+ * space, p-norm, arithmetic mean). Instead of gathering the values of one element at a time, every ranking column is swept
+ * over a block of elements, adding to one accumulator per element. The loops over complete rankings have no branches and
+ * work on contiguous arrays, so the JIT can unroll and vectorise them.
+ *
+ * Values are added in ranking order, the same order as RankingMatrix.copyValuesOf, so the results are exactly the same as
+ * aggregating one element at a time
+ */
+final class ColumnKernels {
+    // Elements per block, so that the accumulators of a block stay in the cache while all the columns are swept
+    private static final int BLOCK_SIZE = 1024;
+
+    private ColumnKernels() {
+        // Only static methods
+    }
+
+    /**
+     * Computes exp(mean of ln(x)) of the values of every element in [from, to), the geometric mean in log space
+     * @param aggregatedValues array to store the result of every element in
+     */
+    static void geometricMean(RankingMatrix rankingMatrix, int from, int to, double[] aggregatedValues) {
+        double[] sums = new double[BLOCK_SIZE];
+        int[] counts = new int[BLOCK_SIZE];
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, to - blockStart);
+            Arrays.fill(sums, 0, length, 0.0);
+            Arrays.fill(counts, 0, length, 0);
+
+            for (int k = 0; k < rankingMatrix.getNumberOfRankings(); ++k) {
+                double[] column = rankingMatrix.getColumn(k);
+                if (isComplete(rankingMatrix, k)) {
+                    for (int i = 0; i < length; ++i)
+                        sums[i] += Math.log(column[blockStart + i]);
+                    for (int i = 0; i < length; ++i)
+                        counts[i]++;
+                }
+                else {
+                    long[] presence = rankingMatrix.getPresence(k);
+                    for (int i = 0; i < length; ++i) {
+                        int element = blockStart + i;
+                        if ((presence[element >>> 6] & (1L << element)) != 0) {
+                            sums[i] += Math.log(column[element]);
+                            counts[i]++;
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < length; ++i)
+                aggregatedValues[blockStart + i] = Math.exp(sums[i] / counts[i]);
+        }
+    }
+
+    /**
+     * Computes the mean of x^p of the values of every element in [from, to), the p-norm of Lin, 2010.
+     * For p = 1 this is the arithmetic mean and no power is computed
+     * @param aggregatedValues array to store the result of every element in
+     */
+    static void powerMean(RankingMatrix rankingMatrix, double p, int from, int to, double[] aggregatedValues) {
+        double[] sums = new double[BLOCK_SIZE];
+        int[] counts = new int[BLOCK_SIZE];
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, to - blockStart);
+            Arrays.fill(sums, 0, length, 0.0);
+            Arrays.fill(counts, 0, length, 0);
+
+            for (int k = 0; k < rankingMatrix.getNumberOfRankings(); ++k) {
+                double[] column = rankingMatrix.getColumn(k);
+                if (isComplete(rankingMatrix, k)) {
+                    // Math.pow(x, 1.0) is x, so the plain sum gives exactly the same result
+                    if (p == 1.0)
+                        for (int i = 0; i < length; ++i)
+                            sums[i] += column[blockStart + i];
+                    else
+                        for (int i = 0; i < length; ++i)
+                            sums[i] += Math.pow(column[blockStart + i], p);
+                    for (int i = 0; i < length; ++i)
+                        counts[i]++;
+                }
+                else {
+                    long[] presence = rankingMatrix.getPresence(k);
+                    for (int i = 0; i < length; ++i) {
+                        int element = blockStart + i;
+                        if ((presence[element >>> 6] & (1L << element)) != 0) {
+                            sums[i] += p == 1.0 ? column[element] : Math.pow(column[element], p);
+                            counts[i]++;
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < length; ++i)
+                aggregatedValues[blockStart + i] = sums[i] / counts[i];
+        }
+    }
+
+    /**
+     * Helper function, checks if a ranking contains all the elements
+     */
+    private static boolean isComplete(RankingMatrix rankingMatrix, int ranking) {
+        return rankingMatrix.getOrder(ranking).length == rankingMatrix.getNumberOfElements();
+    }
+}
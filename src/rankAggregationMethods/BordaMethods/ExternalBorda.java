@@ -0,0 +1,485 @@
+package rankAggregationMethods.BordaMethods;
+
+import preprocessing.IndexedRanking;
+import preprocessing.SnpIdDictionary;
+import preprocessing.TresFileParser;
+import rankAggregationMethods.BoundedRanking;
+import rankAggregationMethods.RankAggregationDataTransformation;
+import rankAggregationMethods.SortedRanking;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * External memory Borda method, for rankings that do not fit in memory together (e.g. millions of SNPs x hundreds of
+ * bootstrap rankings). Only one ranking at a time has to be in memory:
+ *  - the (SNP id, value) pairs of the rankings are collected in a buffer, which is sorted by SNP id and spilled to a
+ *    temporary file (run) whenever it is full
+ *  - the runs are merged (k-way) by SNP id, and the values of every SNP are aggregated with the BordaMethod as they stream
+ *    past
+ *  - the aggregated values are kept in a bounded heap (top-k), or spilled in sorted runs again and merged by value (full
+ *    sort), so the output does not have to fit in memory either
+ * Memory is bounded by the budget given, apart from the dictionary of the SNP ids. A quarter of the budget is for the read
+ * buffers of the merged runs, at least MIN_READ_BUFFER bytes each, which limits the number of runs merged at once (and of
+ * files open at once). When there are more runs, groups of them are first merged into longer runs, in as many passes as
+ * needed.
+ *
+ * The values of a SNP reach the aggregation in ranking order, so the results are the same as the in-memory BordaMethod,
+ * ties ordered by dictionary id
+ */
+public class ExternalBorda implements Closeable {
+    // Bytes of a spilled record, SNP id and value
+    private static final int RECORD_BYTES = Integer.BYTES + Double.BYTES;
+    // Smallest read buffer of a run during the merge
+    private static final int MIN_READ_BUFFER = 4096;
+    // Budget bytes per record of the buffers: 16 of the input buffer, 12 of the output buffer and 8 to sort it, the
+    // rest (a quarter of the budget) for the read buffers of the runs
+    private static final int BUDGET_BYTES_PER_RECORD = 48;
+
+    // Order of the runs sorted by id, earlier runs holding earlier rankings
+    private static final Comparator<RunReader> BY_ID = new Comparator<RunReader>() {
+        @Override
+        public int compare(RunReader o1, RunReader o2) {
+            return o1.id != o2.id ? Integer.compare(o1.id, o2.id) : Integer.compare(o1.run, o2.run);
+        }
+    };
+
+    // Order of the runs sorted by value, equal values by id
+    private static final Comparator<RunReader> BY_VALUE = new Comparator<RunReader>() {
+        @Override
+        public int compare(RunReader o1, RunReader o2) {
+            int comparison = Double.compare(o1.value, o2.value);
+            return comparison != 0 ? comparison : Integer.compare(o1.id, o2.id);
+        }
+    };
+
+    // The aggregation function
+    private final BordaMethod method;
+    // Folder of the temporary run files
+    private final File directory;
+    // Bytes of memory the buffers may take
+    private final long memoryBudget;
+    // Most runs merged at once, so that their read buffers fit in a quarter of the budget
+    private final int maxFanIn;
+
+    // Records collected and not yet spilled: key = SNP id << 32 | position, so sorting the keys sorts by id, stable
+    private final long[] keys;
+    private final double[] values;
+    private int bufferSize = 0;
+    // Spilled runs, in the order they were written
+    private final List<File> runs = new ArrayList<>();
+    // Most rankings a SNP can be in
+    private int numberOfRankings = 0;
+
+    /**
+     * Class constructor
+     * @param method the Borda method whose aggregation function is applied
+     * @param directory folder for the temporary run files, created if it does not exist
+     * @param memoryBudget bytes of memory the buffers may take
+     * @throws IOException if the folder cannot be created
+     */
+    public ExternalBorda(BordaMethod method, File directory, long memoryBudget) throws IOException {
+        if (memoryBudget < 4 * MIN_READ_BUFFER)
+            throw new IllegalArgumentException("Memory budget must be at least " + 4 * MIN_READ_BUFFER + " bytes");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create folder " + directory);
+        this.method = method;
+        this.directory = directory;
+        this.memoryBudget = memoryBudget;
+        this.maxFanIn = (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudget / 4 / MIN_READ_BUFFER));
+
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, memoryBudget / BUDGET_BYTES_PER_RECORD);
+        keys = new long[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * Adds every TRES file of a list as a ranking, parsing one file at a time
+     * @param files the files generated by TRES, in ranking order
+     * @param dictionary dictionary in which the SNP ids are interned
+     * @param parameter 0 to rank by SNP rank, 1 by normalized SNP score (check SNP.formatOutput)
+     * @throws IOException if a file cannot be read or a run cannot be written
+     */
+    public void addRankingFiles(List<File> files, SnpIdDictionary dictionary, int parameter) throws IOException {
+        for (File file : files)
+            addRanking(TresFileParser.parse(file, dictionary).toIndexedRanking(parameter));
+    }
+
+    /**
+     * Adds a ranking, spilling the buffer to a run whenever it is full. Rankings are aggregated in the order they are added
+     * @param ranking ranking whose ids come from the dictionary the output is named with
+     * @throws IOException if a run cannot be written
+     */
+    public void addRanking(IndexedRanking ranking) throws IOException {
+        for (int p = 0; p < ranking.size(); ++p) {
+            if (bufferSize == keys.length)
+                spill();
+            keys[bufferSize] = ((long) ranking.getIds()[p] << 32) | bufferSize;
+            values[bufferSize] = ranking.getValues()[p];
+            bufferSize++;
+        }
+        numberOfRankings++;
+    }
+
+    /**
+     * Finds the k best SNPs, keeping only k of them in memory
+     * @param dictionary dictionary of the SNP ids of the rankings
+     * @param k number of SNPs wanted
+     * @return the sorted ranking of the k best SNPs (all of them if there are fewer)
+     * @throws IOException if the runs cannot be read
+     */
+    public SortedRanking getTopK(final SnpIdDictionary dictionary, int k) throws IOException {
+        if (k < 0)
+            throw new IllegalArgumentException("k must not be negative");
+        final BoundedRanking best = new BoundedRanking(k);
+        aggregate(new AggregatedValueConsumer() {
+            @Override
+            public void accept(int id, double value) {
+                best.offer(id, value);
+            }
+        });
+
+        final int[] ids = new int[best.size()];
+        double[] scores = new double[ids.length];
+        best.drainInto(ids, scores);
+        int[] order = new int[ids.length];
+        for (int position = 0; position < order.length; ++position)
+            order[position] = position;
+        return SortedRanking.ofSortedOrder(new AbstractList<String>() {
+            @Override
+            public String get(int position) {
+                return dictionary.getName(ids[position]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        }, scores, order);
+    }
+
+    /**
+     * Sorts all the SNPs by aggregated value with an external merge sort, handing them to a consumer best first
+     * @param dictionary dictionary of the SNP ids of the rankings
+     * @param consumer receives every SNP id and its aggregated value, in ranking order
+     * @throws IOException if the runs cannot be read or written, or the consumer fails
+     */
+    public void sort(SnpIdDictionary dictionary, RankingConsumer consumer) throws IOException {
+        final int capacity = keys.length;
+        final int[] ids = new int[capacity];
+        final double[] scores = new double[capacity];
+        final int[] size = {0};
+        final List<File> sortedRuns = new ArrayList<>();
+        try {
+            // Aggregated values come by ascending id, a stable sort by value keeps equal values in id order
+            aggregate(new AggregatedValueConsumer() {
+                @Override
+                public void accept(int id, double value) throws IOException {
+                    if (size[0] == capacity) {
+                        sortedRuns.add(writeSortedRun(ids, scores, size[0]));
+                        size[0] = 0;
+                    }
+                    ids[size[0]] = id;
+                    scores[size[0]] = value;
+                    size[0]++;
+                }
+            });
+            if (size[0] > 0 || sortedRuns.isEmpty())
+                sortedRuns.add(writeSortedRun(ids, scores, size[0]));
+
+            // Merge by (value, id), ties between runs cannot happen as every id is in one run only
+            reduceRuns(sortedRuns, BY_VALUE, ".sorted");
+            List<RunReader> readers = openRuns(sortedRuns);
+            try {
+                PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, readers.size()), BY_VALUE);
+                for (RunReader reader : readers)
+                    if (reader.next())
+                        queue.add(reader);
+
+                int position = 0;
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    consumer.accept(position++, dictionary.getName(reader.id), reader.value);
+                    if (reader.next())
+                        queue.add(reader);
+                }
+            } finally {
+                closeAll(readers);
+            }
+        } finally {
+            deleteAll(sortedRuns);
+        }
+    }
+
+    /**
+     * Deletes the temporary run files
+     */
+    @Override
+    public void close() {
+        deleteAll(runs);
+        runs.clear();
+        bufferSize = 0;
+    }
+
+    /**
+     * Receives the SNPs of the sorted output, one at a time
+     */
+    public interface RankingConsumer {
+        /**
+         * @param position position in the ranking, 0 is the best
+         * @param snpId the SNP id
+         * @param value the aggregated value of the SNP
+         * @throws IOException if the SNP cannot be written
+         */
+        void accept(int position, String snpId, double value) throws IOException;
+    }
+
+    /**
+     * Helper interface, receives the aggregated value of every SNP, by ascending id
+     */
+    private interface AggregatedValueConsumer {
+        void accept(int id, double value) throws IOException;
+    }
+
+    /**
+     * Helper function, merges the runs by SNP id and aggregates the values of every SNP, in ranking order
+     */
+    private void aggregate(AggregatedValueConsumer consumer) throws IOException {
+        // The records still in the buffer are the last run, read from memory
+        sortBuffer();
+        reduceRuns(runs, BY_ID, ".run");
+        List<RunReader> readers = openRuns(runs);
+        readers.add(new BufferReader());
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(readers.size(), BY_ID);
+            for (int run = 0; run < readers.size(); ++run) {
+                readers.get(run).run = run;
+                if (readers.get(run).next())
+                    queue.add(readers.get(run));
+            }
+
+            double[] group = new double[Math.max(1, numberOfRankings)];
+            double[] scratch = new double[group.length];
+            while (!queue.isEmpty()) {
+                int id = queue.peek().id;
+                int count = 0;
+                while (!queue.isEmpty() && queue.peek().id == id) {
+                    RunReader reader = queue.poll();
+                    // Every ranking contains a SNP at most once, but input may not be clean
+                    if (count == group.length) {
+                        group = Arrays.copyOf(group, count * 2);
+                        scratch = new double[group.length];
+                    }
+                    group[count++] = reader.value;
+                    if (reader.next())
+                        queue.add(reader);
+                }
+                consumer.accept(id, method.aggregate(group, 0, count, scratch));
+            }
+        } finally {
+            closeAll(readers);
+        }
+    }
+
+    /**
+     * Helper function, merges groups of consecutive runs into longer runs until there are at most maxFanIn of them.
+     * Consecutive runs are merged so that runs merged by id keep their order, earlier runs holding earlier rankings
+     * @param files the runs, replaced by the merged ones
+     * @param comparator order of the records of the runs
+     * @param suffix suffix of the merged run files
+     */
+    private void reduceRuns(List<File> files, Comparator<RunReader> comparator, String suffix) throws IOException {
+        while (files.size() > maxFanIn) {
+            List<File> merged = new ArrayList<>((files.size() + maxFanIn - 1) / maxFanIn);
+            try {
+                for (int from = 0; from < files.size(); from += maxFanIn) {
+                    List<File> group = files.subList(from, Math.min(files.size(), from + maxFanIn));
+                    merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group, comparator, suffix));
+                }
+            } catch (IOException | RuntimeException e) {
+                // Only the new runs are deleted, the old ones are still complete
+                merged.removeAll(files);
+                deleteAll(merged);
+                throw e;
+            }
+            List<File> old = new ArrayList<>(files);
+            old.removeAll(merged);
+            deleteAll(old);
+            files.clear();
+            files.addAll(merged);
+        }
+    }
+
+    /**
+     * Helper function, merges runs into a new run
+     */
+    private File mergeRuns(List<File> group, Comparator<RunReader> comparator, String suffix) throws IOException {
+        File run = File.createTempFile("borda", suffix, directory);
+        List<RunReader> readers = openRuns(group);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                MIN_READ_BUFFER * 16))) {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(readers.size(), comparator);
+            for (int i = 0; i < readers.size(); ++i) {
+                readers.get(i).run = i;
+                if (readers.get(i).next())
+                    queue.add(readers.get(i));
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                output.writeInt(reader.id);
+                output.writeDouble(reader.value);
+                if (reader.next())
+                    queue.add(reader);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeAll(readers);
+            deleteAll(Collections.singletonList(run));
+            throw e;
+        }
+        closeAll(readers);
+        return run;
+    }
+
+    /**
+     * Helper function, sorts the buffer by SNP id, equal ids keeping the order they were added in
+     */
+    private void sortBuffer() {
+        Arrays.sort(keys, 0, bufferSize);
+    }
+
+    /**
+     * Helper function, writes the buffer to a new run, sorted by SNP id
+     */
+    private void spill() throws IOException {
+        sortBuffer();
+        File run = File.createTempFile("borda", ".run", directory);
+        runs.add(run);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                MIN_READ_BUFFER * 16))) {
+            for (int i = 0; i < bufferSize; ++i) {
+                output.writeInt((int) (keys[i] >>> 32));
+                output.writeDouble(values[(int) keys[i]]);
+            }
+        }
+        bufferSize = 0;
+    }
+
+    /**
+     * Helper function, sorts (id, value) pairs by value, stable, and writes them to a new run
+     */
+    private File writeSortedRun(int[] ids, double[] scores, int size) throws IOException {
+        int[] order = new int[size];
+        for (int i = 0; i < size; ++i)
+            order[i] = i;
+        RankAggregationDataTransformation.sortIndicesByValue(order, scores);
+
+        File run = File.createTempFile("borda", ".sorted", directory);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                MIN_READ_BUFFER * 16))) {
+            for (int i : order) {
+                output.writeInt(ids[i]);
+                output.writeDouble(scores[i]);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Helper function, opens the runs with read buffers that share the memory budget
+     */
+    private List<RunReader> openRuns(List<File> files) throws IOException {
+        int bufferBytes = (int) Math.max(MIN_READ_BUFFER,
+                Math.min(1 << 20, memoryBudget / 4 / Math.max(1, files.size())));
+        bufferBytes -= bufferBytes % RECORD_BYTES;
+        List<RunReader> readers = new ArrayList<>(files.size() + 1);
+        try {
+            for (File file : files)
+                readers.add(new FileRunReader(file, bufferBytes));
+        } catch (IOException e) {
+            closeAll(readers);
+            throw e;
+        }
+        return readers;
+    }
+
+    private static void closeAll(List<RunReader> readers) {
+        for (RunReader reader : readers)
+            reader.close();
+    }
+
+    private static void deleteAll(List<File> files) {
+        for (File file : files)
+            if (!file.delete())
+                file.deleteOnExit();
+    }
+
+    /**
+     * Cursor over the records of a run, sorted by id or by value
+     */
+    private abstract static class RunReader {
+        // Current record
+        int id;
+        double value;
+        // Position of the run among the merged ones
+        int run;
+
+        /**
+         * Moves to the next record
+         * @return false if there are no more records
+         */
+        abstract boolean next() throws IOException;
+
+        void close() {
+            // Nothing to release by default
+        }
+    }
+
+    /**
+     * Run in a temporary file
+     */
+    private static class FileRunReader extends RunReader {
+        private final DataInputStream input;
+        private long remaining;
+
+        FileRunReader(File file, int bufferBytes) throws IOException {
+            remaining = file.length() / RECORD_BYTES;
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), bufferBytes));
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (remaining == 0)
+                return false;
+            id = input.readInt();
+            value = input.readDouble();
+            remaining--;
+            return true;
+        }
+
+        @Override
+        void close() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Only read from, nothing is lost
+            }
+        }
+    }
+
+    /**
+     * The records still in the buffer, sorted, the last run
+     */
+    private class BufferReader extends RunReader {
+        private int position = 0;
+
+        @Override
+        boolean next() {
+            if (position == bufferSize)
+                return false;
+            id = (int) (keys[position] >>> 32);
+            value = values[(int) keys[position]];
+            position++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package rankAggregationMethods.BordaMethods;
+
+import preprocessing.IndexedRanking;
+import preprocessing.SnpIdDictionary;
+import rankAggregationMethods.SortedRanking;
+
+import java.util.*;
+
+/**
+ * Borda median, geometric mean and p-norm of a set of rankings that changes, one ranking added or removed at a time.
+ * Instead of aggregating all the rankings again, the state of every SNP is kept:
+ *  - its values sorted, for the median
+ *  - the running sum of ln(x) of its values, for the geometric mean
+ *  - the running sum of x^p of its values, for the p-norm
+ * so adding or removing a ranking only updates the SNPs of that ranking. The sorted output of every method is an order
+ * statistic tree, only updated when asked for: the affected SNPs are removed and inserted again with their new scores,
+ * O(log n) each, and the positions that changed since the previous output are reported, so only those need to be emitted
+ * again. The output is returned as a view of the tree, not copied.
+ *
+ * The results are the same as BordaMedian, BordaGeometricMean and BordaPNorm on the current rankings, with element index
+ * the dictionary id. Running sums are compensated (Neumaier), so they differ from a sum from scratch by rounding only.
+ * Not thread safe
+ */
+public class IncrementalBorda {
+    // Initial capacity of the per SNP arrays
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Dictionary of the SNP ids of all the rankings
+    private final SnpIdDictionary dictionary;
+    // Parameter of the p-norm
+    private final double p;
+    // Rankings currently aggregated, by the key returned when they were added
+    private final Map<Integer, IndexedRanking> rankings = new LinkedHashMap<>();
+    private int nextKey = 0;
+
+    // State of every SNP, position is the dictionary id
+    // Number of rankings that contain the SNP
+    private int[] counts = new int[INITIAL_CAPACITY];
+    // Values of the SNP sorted (as Double.compare orders them), only the first counts[id] are used
+    private double[][] sortedValues = new double[INITIAL_CAPACITY][];
+    // Sum of ln(x) of the finite logarithms and its compensation, number of infinite or NaN logarithms (x <= 0)
+    private double[] logSums = new double[INITIAL_CAPACITY];
+    private double[] logCompensations = new double[INITIAL_CAPACITY];
+    private int[] nonFiniteLogs = new int[INITIAL_CAPACITY];
+    // Same for x^p
+    private double[] powerSums = new double[INITIAL_CAPACITY];
+    private double[] powerCompensations = new double[INITIAL_CAPACITY];
+    private int[] nonFinitePowers = new int[INITIAL_CAPACITY];
+
+    // Sorted outputs
+    private final IncrementalRanking median;
+    private final IncrementalRanking geometricMean;
+    private final IncrementalRanking pNorm;
+
+    /**
+     * Class constructor
+     * @param dictionary dictionary of the SNP ids of the rankings that will be added
+     * @param p parameter of the p-norm (check BordaPNorm)
+     */
+    public IncrementalBorda(SnpIdDictionary dictionary, double p) {
+        this.dictionary = dictionary;
+        this.p = p;
+
+        median = new IncrementalRanking() {
+            @Override
+            double score(int id) {
+                return medianOf(id);
+            }
+        };
+        geometricMean = new IncrementalRanking() {
+            @Override
+            double score(int id) {
+                return geometricMeanOf(id);
+            }
+        };
+        pNorm = new IncrementalRanking() {
+            @Override
+            double score(int id) {
+                return pNormOf(id);
+            }
+        };
+    }
+
+    /**
+     * Adds a ranking to the aggregation, updating only the SNPs it contains
+     * @param ranking ranking whose ids come from the dictionary of this aggregation
+     * @return key of the ranking, to remove it with
+     */
+    public int addRanking(IndexedRanking ranking) {
+        ensureCapacity(dictionary.size());
+        for (int position = 0; position < ranking.size(); ++position) {
+            int id = ranking.getIds()[position];
+            double value = ranking.getValues()[position];
+            insertValue(id, value);
+            logSums[id] = add(logSums, logCompensations, nonFiniteLogs, id, Math.log(value), 1);
+            powerSums[id] = add(powerSums, powerCompensations, nonFinitePowers, id, power(value), 1);
+            markAffected(id);
+        }
+
+        int key = nextKey++;
+        rankings.put(key, ranking);
+        return key;
+    }
+
+    /**
+     * Removes a ranking from the aggregation, updating only the SNPs it contains.
+     * SNPs that are in no ranking any more are removed from the outputs
+     * @param key key returned when the ranking was added
+     * @throws IllegalArgumentException if there is no ranking with this key
+     */
+    public void removeRanking(int key) {
+        IndexedRanking ranking = rankings.remove(key);
+        if (ranking == null)
+            throw new IllegalArgumentException("No ranking with key " + key);
+
+        for (int position = 0; position < ranking.size(); ++position) {
+            int id = ranking.getIds()[position];
+            double value = ranking.getValues()[position];
+            removeValue(id, value);
+            if (counts[id] == 0) {
+                // Starting from exact zeros, so that no rounding is left behind
+                logSums[id] = logCompensations[id] = powerSums[id] = powerCompensations[id] = 0.0;
+                nonFiniteLogs[id] = nonFinitePowers[id] = 0;
+            }
+            else {
+                logSums[id] = add(logSums, logCompensations, nonFiniteLogs, id, Math.log(value), -1);
+                powerSums[id] = add(powerSums, powerCompensations, nonFinitePowers, id, power(value), -1);
+            }
+            markAffected(id);
+        }
+    }
+
+    // Class accessors
+
+    public int getNumberOfRankings() {
+        return rankings.size();
+    }
+
+    /**
+     * @return the keys of the rankings currently aggregated, in the order they were added
+     */
+    public Set<Integer> getRankingKeys() {
+        return Collections.unmodifiableSet(rankings.keySet());
+    }
+
+    public IncrementalRanking getMedian() {
+        return median;
+    }
+
+    public IncrementalRanking getGeometricMean() {
+        return geometricMean;
+    }
+
+    public IncrementalRanking getPNorm() {
+        return pNorm;
+    }
+
+    /**
+     * Median of the values of a SNP, same as BordaMedian
+     */
+    private double medianOf(int id) {
+        double[] values = sortedValues[id];
+        int count = counts[id];
+        if (count % 2 == 0)
+            return (values[count / 2 - 1] + values[count / 2]) / 2;
+        return values[count / 2];
+    }
+
+    /**
+     * Geometric mean of the values of a SNP in log space, same as BordaGeometricMean.
+     * Infinite or NaN logarithms cannot be removed from a running sum, so if there are any the sum is made again
+     */
+    private double geometricMeanOf(int id) {
+        if (nonFiniteLogs[id] == 0)
+            return Math.exp((logSums[id] + logCompensations[id]) / counts[id]);
+
+        double sum = 0.0;
+        for (int i = 0; i < counts[id]; ++i)
+            sum += Math.log(sortedValues[id][i]);
+        return Math.exp(sum / counts[id]);
+    }
+
+    /**
+     * Mean of x^p of the values of a SNP, same as BordaPNorm
+     */
+    private double pNormOf(int id) {
+        if (nonFinitePowers[id] == 0)
+            return (powerSums[id] + powerCompensations[id]) / counts[id];
+
+        double sum = 0.0;
+        for (int i = 0; i < counts[id]; ++i)
+            sum += power(sortedValues[id][i]);
+        return sum / counts[id];
+    }
+
+    /**
+     * Helper function, x^p the way BordaPNorm computes it
+     */
+    private double power(double value) {
+        return p == 1.0 ? value : Math.pow(value, p);
+    }
+
+    /**
+     * Helper function, adds (sign 1) or subtracts (sign -1) a term to the running sum of a SNP with Neumaier compensation,
+     * counting the infinite and NaN terms apart
+     * @return the new sum, the compensation is updated in place
+     */
+    private static double add(double[] sums, double[] compensations, int[] nonFinite, int id, double term, int sign) {
+        if (Double.isNaN(term) || Double.isInfinite(term)) {
+            nonFinite[id] += sign;
+            return sums[id];
+        }
+        term *= sign;
+        double sum = sums[id];
+        double newSum = sum + term;
+        if (Math.abs(sum) >= Math.abs(term))
+            compensations[id] += (sum - newSum) + term;
+        else
+            compensations[id] += (term - newSum) + sum;
+        return newSum;
+    }
+
+    /**
+     * Helper function, inserts a value in the sorted values of a SNP
+     */
+    private void insertValue(int id, double value) {
+        double[] values = sortedValues[id];
+        int count = counts[id];
+        if (values == null)
+            values = sortedValues[id] = new double[4];
+        else if (count == values.length)
+            values = sortedValues[id] = Arrays.copyOf(values, count * 2);
+
+        int position = count;
+        while (position > 0 && Double.compare(values[position - 1], value) > 0) {
+            values[position] = values[position - 1];
+            position--;
+        }
+        values[position] = value;
+        counts[id] = count + 1;
+    }
+
+    /**
+     * Helper function, removes one occurrence of a value from the sorted values of a SNP
+     */
+    private void removeValue(int id, double value) {
+        double[] values = sortedValues[id];
+        int count = counts[id];
+        int position = 0;
+        while (position < count && Double.compare(values[position], value) != 0)
+            position++;
+        if (position == count)
+            throw new IllegalStateException("Value of the removed ranking not found for SNP " + dictionary.getName(id));
+
+        System.arraycopy(values, position + 1, values, position, count - position - 1);
+        counts[id] = count - 1;
+        if (count == 1)
+            sortedValues[id] = null;
+    }
+
+    /**
+     * Helper function, grows the per SNP arrays to fit all the ids of the dictionary
+     */
+    private void ensureCapacity(int size) {
+        if (size <= counts.length)
+            return;
+        int capacity = Math.max(size, counts.length * 2);
+        counts = Arrays.copyOf(counts, capacity);
+        sortedValues = Arrays.copyOf(sortedValues, capacity);
+        logSums = Arrays.copyOf(logSums, capacity);
+        logCompensations = Arrays.copyOf(logCompensations, capacity);
+        nonFiniteLogs = Arrays.copyOf(nonFiniteLogs, capacity);
+        powerSums = Arrays.copyOf(powerSums, capacity);
+        powerCompensations = Arrays.copyOf(powerCompensations, capacity);
+        nonFinitePowers = Arrays.copyOf(nonFinitePowers, capacity);
+    }
+
+    private void markAffected(int id) {
+        median.markAffected(id);
+        geometricMean.markAffected(id);
+        pNorm.markAffected(id);
+    }
+
+    /**
+     * Sorted output of one of the methods, updated when asked for.
+     * getRanking returns the current ranking and getChangedRange the positions of it that differ from the ranking returned
+     * before it (elements or scores), the only ones that have to be emitted again
+     */
+    public abstract class IncrementalRanking {
+        // SNPs of the ranking sorted by ascending score, equal scores by dictionary id, with their scores
+        private final OrderStatisticTree tree = new OrderStatisticTree();
+        // SNPs whose values changed since the last update, as a list and as a bitmap
+        private int[] affected = new int[16];
+        private int numberOfAffected = 0;
+        private long[] isAffected = new long[0];
+        // Positions [from, to) of the last ranking returned that changed
+        private final int[] changedRange = {0, 0};
+        // Read-only view of the tree
+        private final SortedRanking view = new SortedRanking(new AbstractList<String>() {
+            @Override
+            public String get(int id) {
+                return dictionary.getName(id);
+            }
+
+            @Override
+            public int size() {
+                return dictionary.size();
+            }
+        }) {
+            @Override
+            public int size() {
+                return tree.size();
+            }
+
+            @Override
+            public int getElement(int position) {
+                return tree.elementAt(position);
+            }
+
+            @Override
+            public double getScore(int position) {
+                return tree.getKey(tree.elementAt(position));
+            }
+        };
+
+        /**
+         * @return the aggregated value of a SNP contained in at least one ranking
+         */
+        abstract double score(int id);
+
+        /**
+         * Sorts the affected SNPs again, and returns the current ranking
+         * @return read-only view of the ranking of all the SNPs contained in at least one of the rankings, element index the
+         * dictionary id. It is not copied: it changes on the next call, so emit what is needed (check getChangedRange) first
+         */
+        public SortedRanking getRanking() {
+            update();
+            return view;
+        }
+
+        /**
+         * @return {from, to}, the positions [from, to) of the last ranking returned by getRanking that differ from the
+         * one returned before it. Empty (from == to) if nothing changed but maybe the length, positions past the end of a
+         * shorter ranking were removed
+         */
+        public int[] getChangedRange() {
+            return changedRange.clone();
+        }
+
+        private void markAffected(int id) {
+            int words = (id >>> 6) + 1;
+            if (words > isAffected.length)
+                isAffected = Arrays.copyOf(isAffected, Math.max(words, isAffected.length * 2));
+            if ((isAffected[id >>> 6] & (1L << id)) != 0)
+                return;
+            isAffected[id >>> 6] |= 1L << id;
+            if (numberOfAffected == affected.length)
+                affected = Arrays.copyOf(affected, numberOfAffected * 2);
+            affected[numberOfAffected++] = id;
+        }
+
+        /**
+         * Helper function, takes the affected SNPs out of the tree and inserts the ones still in some ranking with their
+         * new scores, O(log n) each. Positions between the old and the new position of an affected SNP shift, so the
+         * changed range goes from the first to the last of these positions, or to the end if the length changed
+         */
+        private void update() {
+            if (numberOfAffected == 0) {
+                changedRange[0] = changedRange[1] = 0;
+                return;
+            }
+
+            int oldSize = tree.size();
+            int from = Integer.MAX_VALUE;
+            int last = -1;
+            for (int i = 0; i < numberOfAffected; ++i) {
+                int id = affected[i];
+                if (tree.contains(id)) {
+                    int position = tree.positionOf(id);
+                    from = Math.min(from, position);
+                    last = Math.max(last, position);
+                }
+            }
+            for (int i = 0; i < numberOfAffected; ++i)
+                if (tree.contains(affected[i]))
+                    tree.remove(affected[i]);
+
+            for (int i = 0; i < numberOfAffected; ++i) {
+                int id = affected[i];
+                if (counts[id] > 0)
+                    tree.insert(id, score(id));
+            }
+            for (int i = 0; i < numberOfAffected; ++i) {
+                int id = affected[i];
+                // Its score may have changed even if its position did not
+                if (tree.contains(id)) {
+                    int position = tree.positionOf(id);
+                    from = Math.min(from, position);
+                    last = Math.max(last, position);
+                }
+                isAffected[id >>> 6] &= ~(1L << id);
+            }
+            numberOfAffected = 0;
+
+            int size = tree.size();
+            int to = size != oldSize ? size : last + 1;
+            if (from < to) {
+                changedRange[0] = from;
+                changedRange[1] = to;
+            }
+            else
+                changedRange[0] = changedRange[1] = size;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package rankAggregationMethods.BordaMethods;
+
+import java.util.Arrays;
+
+/**
+ * Elements sorted by (key, element index), ascending, as a treap where every node knows the size of its subtree.
+ * Inserting or removing an element, finding the position of an element and the element at a position take O(log n)
+ * (expected). Nodes are the element indices themselves, kept in arrays that grow with the largest index, so nothing is
+ * allocated per operation. The key of an element must not change while it is in the tree: remove it, change it and
+ * insert it again
+ */
+class OrderStatisticTree {
+    // No node
+    private static final int NIL = -1;
+
+    // Children of every node, position is the element index
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    // Number of nodes of the subtree of every node, 0 if the element is not in the tree
+    private int[] sizes = new int[0];
+    // Key of every element, kept after the element is removed
+    private double[] keys = new double[0];
+    private int root = NIL;
+
+    // Results of split
+    private int splitBefore;
+    private int splitAfter;
+
+    /**
+     * @return the number of elements in the tree
+     */
+    int size() {
+        return sizeOf(root);
+    }
+
+    boolean contains(int element) {
+        return element < sizes.length && sizes[element] > 0;
+    }
+
+    /**
+     * @return the key the element was last inserted with
+     */
+    double getKey(int element) {
+        return keys[element];
+    }
+
+    /**
+     * Inserts an element that is not in the tree
+     * @param element index of the element, not negative
+     * @param key value the element is sorted by
+     */
+    void insert(int element, double key) {
+        ensureCapacity(element + 1);
+        keys[element] = key;
+        left[element] = right[element] = NIL;
+        sizes[element] = 1;
+        root = insert(root, element);
+    }
+
+    /**
+     * Removes an element that is in the tree
+     */
+    void remove(int element) {
+        root = remove(root, element);
+        sizes[element] = 0;
+    }
+
+    /**
+     * @param element an element in the tree
+     * @return the position of the element, 0 is the smallest key
+     */
+    int positionOf(int element) {
+        int position = 0;
+        int node = root;
+        while (node != element) {
+            if (comesBefore(element, node))
+                node = left[node];
+            else {
+                position += sizeOf(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return position + sizeOf(left[element]);
+    }
+
+    /**
+     * @param position position in the tree, from 0 to size() - 1
+     * @return the element at that position
+     */
+    int elementAt(int position) {
+        if (position < 0 || position >= size())
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+        int node = root;
+        while (true) {
+            int leftSize = sizeOf(left[node]);
+            if (position < leftSize)
+                node = left[node];
+            else if (position == leftSize)
+                return node;
+            else {
+                position -= leftSize + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    private int insert(int node, int element) {
+        if (node == NIL)
+            return element;
+        if (priorityOf(element) > priorityOf(node)) {
+            split(node, element);
+            left[element] = splitBefore;
+            right[element] = splitAfter;
+            resize(element);
+            return element;
+        }
+        if (comesBefore(element, node))
+            left[node] = insert(left[node], element);
+        else
+            right[node] = insert(right[node], element);
+        sizes[node]++;
+        return node;
+    }
+
+    private int remove(int node, int element) {
+        if (node == element)
+            return merge(left[node], right[node]);
+        if (comesBefore(element, node))
+            left[node] = remove(left[node], element);
+        else
+            right[node] = remove(right[node], element);
+        sizes[node]--;
+        return node;
+    }
+
+    /**
+     * Helper function, splits a subtree into the nodes that come before an element (splitBefore) and after it (splitAfter)
+     */
+    private void split(int node, int element) {
+        if (node == NIL) {
+            splitBefore = splitAfter = NIL;
+            return;
+        }
+        if (comesBefore(node, element)) {
+            split(right[node], element);
+            right[node] = splitBefore;
+            splitBefore = node;
+        }
+        else {
+            split(left[node], element);
+            left[node] = splitAfter;
+            splitAfter = node;
+        }
+        resize(node);
+    }
+
+    /**
+     * Helper function, merges two subtrees, all the nodes of the first one coming before the nodes of the second one
+     */
+    private int merge(int before, int after) {
+        if (before == NIL)
+            return after;
+        if (after == NIL)
+            return before;
+        if (priorityOf(before) > priorityOf(after)) {
+            right[before] = merge(right[before], after);
+            resize(before);
+            return before;
+        }
+        left[after] = merge(before, left[after]);
+        resize(after);
+        return after;
+    }
+
+    /**
+     * Helper function, true if element a comes before element b: smaller key, equal keys (Double.compare) by index
+     */
+    private boolean comesBefore(int a, int b) {
+        int comparison = Double.compare(keys[a], keys[b]);
+        return comparison < 0 || (comparison == 0 && a < b);
+    }
+
+    private void resize(int node) {
+        sizes[node] = sizeOf(left[node]) + sizeOf(right[node]) + 1;
+    }
+
+    private int sizeOf(int node) {
+        return node == NIL ? 0 : sizes[node];
+    }
+
+    /**
+     * Helper function, pseudo random priority of a node (murmur3 finalizer of its index), so none has to be stored
+     */
+    private static int priorityOf(int node) {
+        int h = node;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= sizes.length)
+            return;
+        int capacity = Math.max(size, sizes.length * 2);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+    }
+}
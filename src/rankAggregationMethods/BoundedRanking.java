@@ -0,0 +1,117 @@
+package rankAggregationMethods;
+
+/**
+ * The k best (smallest value) elements of a ranking, kept as a bounded max-heap on (value, element index), so the worst
+ * element kept is always at the top and can be replaced in O(log k). Equal values are ordered by element index, the same
+ * as a stable sort of the elements in index order
+ */
+public class BoundedRanking {
+    // Elements kept, in heap order
+    private final int[] elements;
+    // Value of every element kept, aligned with elements
+    private final double[] values;
+    // Number of elements kept
+    private int size = 0;
+
+    /**
+     * Class constructor
+     * @param capacity the number of elements to keep (k)
+     */
+    public BoundedRanking(int capacity) {
+        elements = new int[capacity];
+        values = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == elements.length;
+    }
+
+    /**
+     * @return the largest value kept, only meaningful if the heap is not empty
+     */
+    public double worstValue() {
+        return values[0];
+    }
+
+    /**
+     * Adds an element if it is better than the worst one kept, removing that one if the heap is full
+     * @param element index of the element
+     * @param value value of the element
+     */
+    public void offer(int element, double value) {
+        if (!isFull()) {
+            elements[size] = element;
+            values[size] = value;
+            siftUp(size++);
+        }
+        else if (size > 0 && isWorse(elements[0], values[0], element, value)) {
+            elements[0] = element;
+            values[0] = value;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Empties the heap, worst element first
+     * @param sortedElements array to store the elements kept in, best first
+     * @param sortedValues array to store their values in, aligned with sortedElements
+     * @return the number of elements kept
+     */
+    public int drainInto(int[] sortedElements, double[] sortedValues) {
+        int count = size;
+        for (int p = count - 1; p >= 0; --p) {
+            sortedElements[p] = elements[0];
+            sortedValues[p] = values[0];
+            size--;
+            elements[0] = elements[size];
+            values[0] = values[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    /**
+     * Helper function
+     * @return true if (e1, v1) comes after (e2, v2) in the sorted ranking
+     */
+    private static boolean isWorse(int e1, double v1, int e2, double v2) {
+        int comparison = Double.compare(v1, v2);
+        return comparison > 0 || (comparison == 0 && e1 > e2);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!isWorse(elements[position], values[position], elements[parent], values[parent]))
+                break;
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int worst = position;
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < size; ++child)
+                if (isWorse(elements[child], values[child], elements[worst], values[worst]))
+                    worst = child;
+            if (worst == position)
+                return;
+            swap(position, worst);
+            position = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int element = elements[a];
+        elements[a] = elements[b];
+        elements[b] = element;
+        double value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+}
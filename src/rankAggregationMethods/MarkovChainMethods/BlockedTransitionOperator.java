@@ -0,0 +1,207 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Out-of-core transition operator: the transformed transition probability matrix P'(u -> v) = (1 - a)P(u -> v) + a/|S| of a
+ * Markov Chain method, P as created by createTransitionProbabilityMatrix, written to disk as files of row blocks and
+ * streamed through memory mapped buffers at every product, so that the matrix never has to fit in memory.
+ * The entries and the products are computed exactly as for the dense matrix, so the stationary distribution is the same.
+ *
+ * The rows of a block are made from a PairwiseTally of those rows only, so building the files needs memory for one block.
+ * While the rows of a block are multiplied, the next block is loaded in the background, overlapping disk reads with
+ * computation. Blocks are sized so that two of them fit in the memory budget. Mapped pages are clean file pages the
+ * operating system can drop at any time, so the memory held by the operator itself is that of a row and the vectors.
+ *
+ * The files take 8 * n * n bytes on disk. They are deleted on close
+ */
+public class BlockedTransitionOperator implements TransitionOperator, Closeable {
+    // Bytes per matrix entry
+    private static final int ENTRY_BYTES = Double.BYTES;
+    // Largest block file, the limit of a single mapping
+    private static final long MAX_BLOCK_BYTES = Integer.MAX_VALUE;
+
+    // Number of elements/states
+    private final int size;
+    // Rows per block, the last block may have fewer
+    private final int rowsPerBlock;
+    // Folder of the block files
+    private final File directory;
+    // The block files and their mappings
+    private final File[] blockFiles;
+    private final MappedByteBuffer[] blocks;
+    // Loads the next block while the current one is multiplied
+    private final ExecutorService prefetcher;
+    // One row of the matrix, read from the mapped block
+    private final double[] row;
+
+    private BlockedTransitionOperator(int size, int rowsPerBlock, File directory, File[] blockFiles,
+                                      MappedByteBuffer[] blocks) {
+        this.size = size;
+        this.rowsPerBlock = rowsPerBlock;
+        this.directory = directory;
+        this.blockFiles = blockFiles;
+        this.blocks = blocks;
+        this.row = new double[size];
+        this.prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "transition-block-prefetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Writes the transformed transition probability matrix of a Markov Chain method to disk a block of rows at a time
+     * @param method the Markov Chain method whose matrix is written
+     * @param input the prepared input rankings
+     * @param a parameter a of the formula, non-negative Double value (0 writes P as is). The solver must use 0 then
+     * @param directory folder to write the block files in, created if it does not exist
+     * @param memoryBudget bytes of memory the blocks may take, two blocks fit in it (at least one row per block)
+     * @return the operator reading the written blocks, to be closed when no longer needed
+     * @throws IOException if the block files cannot be written
+     */
+    public static BlockedTransitionOperator write(MarkovChain method, MarkovChainInput input, double a, File directory,
+                                                 long memoryBudget) throws IOException {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("Memory budget must be positive");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create folder " + directory);
+
+        int size = input.getRankingMatrix().getNumberOfElements();
+        long rowBytes = (long) size * ENTRY_BYTES;
+        // Two blocks in the budget, each one mappable at once
+        long rows = Math.min(memoryBudget / 2, MAX_BLOCK_BYTES) / Math.max(rowBytes, 1);
+        int rowsPerBlock = (int) Math.max(1, Math.min(rows, Math.max(size, 1)));
+        int numberOfBlocks = (size + rowsPerBlock - 1) / rowsPerBlock;
+
+        File[] blockFiles = new File[numberOfBlocks];
+        MappedByteBuffer[] blocks = new MappedByteBuffer[numberOfBlocks];
+        double[] probabilities = new double[size];
+        ByteBuffer rowBuffer = ByteBuffer.allocateDirect((int) rowBytes).order(ByteOrder.nativeOrder());
+        try {
+            for (int b = 0; b < numberOfBlocks; ++b) {
+                int fromRow = b * rowsPerBlock;
+                int toRow = Math.min(size, fromRow + rowsPerBlock);
+                PairwiseTally tally = PairwiseTally.fromRankingMatrix(input.getRankingMatrix(), fromRow, toRow);
+
+                blockFiles[b] = File.createTempFile("block" + b + ".", ".transition", directory);
+                try (RandomAccessFile file = new RandomAccessFile(blockFiles[b], "rw");
+                     FileChannel channel = file.getChannel()) {
+                    for (int u = fromRow; u < toRow; ++u) {
+                        method.fillTransitionProbabilityRow(tally, u, probabilities);
+                        // Same operations as MarkovChain.transformMCMatrix on the dense matrix
+                        for (int v = 0; v < size; ++v)
+                            probabilities[v] = probabilities[v] * (1 - a) + a / size;
+                        rowBuffer.clear();
+                        rowBuffer.asDoubleBuffer().put(probabilities);
+                        while (rowBuffer.hasRemaining())
+                            channel.write(rowBuffer);
+                    }
+                    blocks[b] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    blocks[b].order(ByteOrder.nativeOrder());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteFiles(blockFiles);
+            throw e;
+        }
+        return new BlockedTransitionOperator(size, rowsPerBlock, directory, blockFiles, blocks);
+    }
+
+    // Class accessors
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getRowsPerBlock() {
+        return rowsPerBlock;
+    }
+
+    public int getNumberOfBlocks() {
+        return blocks.length;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void multiplyTransposed(double[] x, double[] result) {
+        Arrays.fill(result, 0.0);
+        Future<?> loaded = prefetch(0);
+        for (int b = 0; b < blocks.length; ++b) {
+            waitFor(loaded);
+            loaded = b + 1 < blocks.length ? prefetch(b + 1) : null;
+
+            DoubleBuffer block = blocks[b].duplicate().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            int fromRow = b * rowsPerBlock;
+            int toRow = Math.min(size, fromRow + rowsPerBlock);
+            for (int u = fromRow; u < toRow; ++u) {
+                double current = x[u];
+                if (current == 0.0)
+                    continue;
+                block.position((u - fromRow) * size);
+                block.get(row);
+                // result[column] = sum over rows of P(row -> column) * x[row]
+                for (int column = 0; column < size; ++column)
+                    result[column] += row[column] * current;
+            }
+        }
+    }
+
+    /**
+     * Stops the prefetching thread and deletes the block files. Mapped buffers stay valid until they are garbage
+     * collected, on some systems the files are only deleted then (at exit at the latest)
+     */
+    @Override
+    public void close() {
+        prefetcher.shutdownNow();
+        deleteFiles(blockFiles);
+    }
+
+    /**
+     * Helper function, starts loading a block into memory in the background
+     */
+    private Future<?> prefetch(final int block) {
+        return prefetcher.submit(new Runnable() {
+            @Override
+            public void run() {
+                blocks[block].load();
+            }
+        });
+    }
+
+    /**
+     * Helper function, waits for a block to be loaded. A failed load only loses the overlap, the block is read anyway
+     */
+    private static void waitFor(Future<?> loaded) {
+        if (loaded == null)
+            return;
+        try {
+            loaded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Pages are read on access instead
+        }
+    }
+
+    private static void deleteFiles(File[] files) {
+        for (File file : files)
+            if (file != null && !file.delete())
+                file.deleteOnExit();
+    }
+}
@@ -0,0 +1,38 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import Jama.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * Transition operator backed by a dense Jama matrix. Reference implementation, the product with the transposed matrix
+ * is computed directly from the rows of the matrix, without cloning or transposing it
+ */
+public class DenseTransitionOperator implements TransitionOperator {
+    // Rows of the transition probability matrix
+    private final double[][] rows;
+
+    /**
+     * @param transitionMatrix square transition probability matrix, used as is (not copied)
+     */
+    public DenseTransitionOperator(Matrix transitionMatrix) {
+        this.rows = transitionMatrix.getArray();
+    }
+
+    public int getSize() {
+        return rows.length;
+    }
+
+    public void multiplyTransposed(double[] x, double[] result) {
+        Arrays.fill(result, 0.0);
+        for (int row = 0; row < rows.length; ++row) {
+            double current = x[row];
+            if (current == 0.0)
+                continue;
+            double[] currentRow = rows[row];
+            // result[column] = sum over rows of P(row -> column) * x[row]
+            for (int column = 0; column < currentRow.length; ++column)
+                result[column] += currentRow[column] * current;
+        }
+    }
+}
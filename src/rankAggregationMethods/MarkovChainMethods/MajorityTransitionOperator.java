@@ -0,0 +1,231 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import rankAggregationMethods.RankingMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Transition operator of the MC1 and MC2 methods [Lin, 2010]. In both methods the probability of moving from element u to
+ * element v is either 1/|S| or 0, depending on the number of rankings where v is better than u (at least one ranking for MC1,
+ * at least half of the rankings for MC2). Only that yes/no information is kept, one bit per pair, which is 64 times less
+ * memory than the dense matrix
+ */
+public class MajorityTransitionOperator implements TransitionOperator {
+    // Number of elements/states
+    private final int size;
+    // rows[u] has bit v set if P(u -> v) = 1/|S|
+    private final long[][] rows;
+    // Probability of staying in the same state, P(u -> u)
+    private final double[] stayProbabilities;
+
+    private MajorityTransitionOperator(int size, long[][] rows, double[] stayProbabilities) {
+        this.size = size;
+        this.rows = rows;
+        this.stayProbabilities = stayProbabilities;
+    }
+
+    /**
+     * Creates the operator, setting P(u -> v) = 1/|S| when v is better than u in at least winsThreshold of the rankings
+     * @param rankingMatrix the indexed input rankings
+     * @param winsThreshold minimum number of rankings in which v must be better than u. 1 gives MC1, ceil(m/2) gives MC2
+     * @return the transition operator
+     */
+    public static MajorityTransitionOperator fromRankingMatrix(RankingMatrix rankingMatrix, int winsThreshold) {
+        int size = rankingMatrix.getNumberOfElements();
+        int words = (size + 63) >>> 6;
+        long[][] rows = new long[size][words];
+
+        if (winsThreshold <= 1)
+            // A single win is enough, so every row is just the union of the "better than" sets of all rankings
+            fillRowsWithAnyWin(rankingMatrix, rows);
+        else
+            fillRowsWithCountedWins(rankingMatrix, new long[][][] {rows}, new int[] {winsThreshold});
+
+        return new MajorityTransitionOperator(size, rows, stayProbabilities(rows, size));
+    }
+
+    /**
+     * Creates the operators of several wins thresholds (e.g. MC1 and MC2) from one count of the pairwise wins
+     * @param rankingMatrix the indexed input rankings
+     * @param winsThresholds minimum number of rankings in which v must be better than u, for every operator
+     * @return the transition operators, in the order of the thresholds
+     */
+    public static MajorityTransitionOperator[] fromRankingMatrix(RankingMatrix rankingMatrix, int[] winsThresholds) {
+        if (winsThresholds.length == 1)
+            return new MajorityTransitionOperator[] {fromRankingMatrix(rankingMatrix, winsThresholds[0])};
+
+        int size = rankingMatrix.getNumberOfElements();
+        int words = (size + 63) >>> 6;
+        long[][][] rowsPerThreshold = new long[winsThresholds.length][size][words];
+        int[] thresholds = new int[winsThresholds.length];
+        for (int t = 0; t < thresholds.length; ++t)
+            thresholds[t] = Math.max(1, winsThresholds[t]);
+        fillRowsWithCountedWins(rankingMatrix, rowsPerThreshold, thresholds);
+
+        MajorityTransitionOperator[] operators = new MajorityTransitionOperator[thresholds.length];
+        for (int t = 0; t < thresholds.length; ++t)
+            operators[t] = new MajorityTransitionOperator(size, rowsPerThreshold[t], stayProbabilities(rowsPerThreshold[t], size));
+        return operators;
+    }
+
+    /**
+     * Helper function, P(u -> u) = 1 - (number of other states u moves to) / |S|
+     */
+    private static double[] stayProbabilities(long[][] rows, int size) {
+        double[] stayProbabilities = new double[size];
+        for (int row = 0; row < size; ++row) {
+            int bitCount = 0;
+            for (long word : rows[row])
+                bitCount += Long.bitCount(word);
+            stayProbabilities[row] = 1 - (bitCount * 1.0) / size;
+        }
+        return stayProbabilities;
+    }
+
+    /**
+     * Helper function, sets bit v of row u if v is better than u in at least one ranking
+     */
+    private static void fillRowsWithAnyWin(RankingMatrix rankingMatrix, long[][] rows) {
+        long[] better = new long[(rankingMatrix.getNumberOfElements() + 63) >>> 6];
+
+        for (int k = 0; k < rankingMatrix.getNumberOfRankings(); ++k) {
+            int[] order = rankingMatrix.getOrder(k);
+            double[] values = rankingMatrix.getSortedValues(k);
+            // Elements with a strictly smaller value than the current position
+            Arrays.fill(better, 0L);
+
+            int blockStart = 0;
+            while (blockStart < order.length) {
+                // Elements with equal values do not win against each other, so they are handled as one block
+                int blockEnd = endOfTieBlock(values, blockStart);
+                for (int p = blockStart; p < blockEnd; ++p) {
+                    long[] row = rows[order[p]];
+                    for (int w = 0; w < better.length; ++w)
+                        row[w] |= better[w];
+                }
+                for (int p = blockStart; p < blockEnd; ++p)
+                    better[order[p] >>> 6] |= 1L << order[p];
+                blockStart = blockEnd;
+            }
+        }
+    }
+
+    /**
+     * Helper function, sets bit v of row u of rowsPerThreshold[t] if v is better than u in at least winsThresholds[t] rankings.
+     * Win counts are kept as bit-sliced counters (one bit plane per bit of the count) for a block of rows at a time,
+     * so the extra memory stays bounded no matter how many elements there are
+     */
+    private static void fillRowsWithCountedWins(RankingMatrix rankingMatrix, long[][][] rowsPerThreshold, int[] winsThresholds) {
+        int size = rankingMatrix.getNumberOfElements();
+        int words = (size + 63) >>> 6;
+        // Number of bits needed to count up to the number of rankings
+        int planes = 32 - Integer.numberOfLeadingZeros(rankingMatrix.getNumberOfRankings());
+        // Rows per block, so that the counters of a block take about 64MB
+        int blockSize = (int) Math.max(1, Math.min(size, (8L << 20) / ((long) planes * words)));
+
+        long[] better = new long[words];
+        long[][][] counters = new long[blockSize][planes][words];
+
+        for (int blockFirstRow = 0; blockFirstRow < size; blockFirstRow += blockSize) {
+            int blockLastRow = Math.min(size, blockFirstRow + blockSize);
+            for (int r = 0; r < blockLastRow - blockFirstRow; ++r)
+                for (long[] plane : counters[r])
+                    Arrays.fill(plane, 0L);
+
+            for (int k = 0; k < rankingMatrix.getNumberOfRankings(); ++k) {
+                int[] order = rankingMatrix.getOrder(k);
+                double[] values = rankingMatrix.getSortedValues(k);
+                Arrays.fill(better, 0L);
+
+                int blockStart = 0;
+                while (blockStart < order.length) {
+                    int blockEnd = endOfTieBlock(values, blockStart);
+                    for (int p = blockStart; p < blockEnd; ++p) {
+                        int element = order[p];
+                        // Add the "better than" set to the win counters of the rows of this block
+                        if (element >= blockFirstRow && element < blockLastRow)
+                            addToCounter(counters[element - blockFirstRow], better);
+                    }
+                    for (int p = blockStart; p < blockEnd; ++p)
+                        better[order[p] >>> 6] |= 1L << order[p];
+                    blockStart = blockEnd;
+                }
+            }
+
+            for (int row = blockFirstRow; row < blockLastRow; ++row)
+                for (int t = 0; t < winsThresholds.length; ++t)
+                    counterAtLeast(counters[row - blockFirstRow], winsThresholds[t], rowsPerThreshold[t][row]);
+        }
+    }
+
+    /**
+     * Helper function, adds one to every bit-sliced counter whose bit is set in the given bitset
+     */
+    private static void addToCounter(long[][] planes, long[] bitset) {
+        for (int w = 0; w < bitset.length; ++w) {
+            long carry = bitset[w];
+            for (int b = 0; b < planes.length && carry != 0; ++b) {
+                long newCarry = planes[b][w] & carry;
+                planes[b][w] ^= carry;
+                carry = newCarry;
+            }
+        }
+    }
+
+    /**
+     * Helper function, compares every bit-sliced counter against a constant, starting from the most significant bit
+     * @param result bitset where the counters greater than or equal to the threshold get their bit set
+     */
+    private static void counterAtLeast(long[][] planes, int threshold, long[] result) {
+        for (int w = 0; w < result.length; ++w) {
+            long greater = 0L;
+            long equal = ~0L;
+            for (int b = planes.length - 1; b >= 0; --b) {
+                if (((threshold >>> b) & 1) == 1)
+                    equal &= planes[b][w];
+                else {
+                    greater |= equal & planes[b][w];
+                    equal &= ~planes[b][w];
+                }
+            }
+            // The threshold may need more bits than the counters have, then no counter can reach it
+            if ((threshold >>> planes.length) != 0)
+                greater = equal = 0L;
+            result[w] = greater | equal;
+        }
+    }
+
+    /**
+     * Helper function, returns the position of the end (exclusive) of the block of equal values starting at blockStart
+     */
+    static int endOfTieBlock(double[] values, int blockStart) {
+        int blockEnd = blockStart + 1;
+        while (blockEnd < values.length && values[blockEnd] == values[blockStart])
+            blockEnd++;
+        return blockEnd;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void multiplyTransposed(double[] x, double[] result) {
+        Arrays.fill(result, 0.0);
+
+        for (int row = 0; row < size; ++row) {
+            if (x[row] == 0.0)
+                continue;
+            // Every set bit of the row moves probability x[row] * 1/|S| to that column
+            double share = x[row] / size;
+            long[] currentRow = rows[row];
+            for (int w = 0; w < currentRow.length; ++w) {
+                long word = currentRow[w];
+                while (word != 0) {
+                    result[(w << 6) + Long.numberOfTrailingZeros(word)] += share;
+                    word &= word - 1;
+                }
+            }
+            result[row] += x[row] * stayProbabilities[row];
+        }
+    }
+}
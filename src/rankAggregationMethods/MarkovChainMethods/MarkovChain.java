@@ -1,8 +1,14 @@
 package rankAggregationMethods.MarkovChainMethods;
 
 import Jama.Matrix;
-import rankAggregationMethods.RankAggregationDataTransformation;
+import metrics.MetricsRegistry;
+import metrics.Stage;
+import preprocessing.IndexedRankings;
+import rankAggregationMethods.RankingMatrix;
+import rankAggregationMethods.SortedRanking;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -11,9 +17,7 @@ import java.util.*;
  */
 public abstract class MarkovChain {
 
-    // Methods
-
-    protected Matrix transitionMatrix;
+    // Methods. They keep no state between calls, so one instance can be applied to several inputs concurrently
 
     /**
      * Creates the transition probability matrix of the Markov Chain methods
@@ -22,7 +26,54 @@ public abstract class MarkovChain {
      * @return Matrix containing Double values between 0.0 and 1.0 - corresponding to probabilities,
      * or -1.0 if this element is not included in the same ranking system
      */
-    protected abstract Matrix createTransitionProbabilityMatrix(List<Map<String, Double>> listOfRankings);
+    protected Matrix createTransitionProbabilityMatrix(List<Map<String, Double>> listOfRankings) {
+        return createTransitionProbabilityMatrix(PairwiseTally.fromRankings(listOfRankings));
+    }
+
+    /**
+     * Creates the transition probability matrix of the Markov Chain methods out of the pairwise statistics of the rankings,
+     * which are the same for all the methods
+     * @param tally the pairwise wins and common rankings of the input rankings
+     * @return Matrix containing Double values between 0.0 and 1.0 - corresponding to probabilities
+     */
+    protected Matrix createTransitionProbabilityMatrix(PairwiseTally tally) {
+        // Create a 2D transition matrix, both dimension sizes equal to the number of SNPs
+        Matrix transitionMatrix = new Matrix(tally.getSize(), tally.getSize());
+
+        // FILLING THE TRANSITION PROBABILITY MATRIX, row-wise
+        double[][] rows = transitionMatrix.getArray();
+        for (int row = 0; row < rows.length; ++row)
+            fillTransitionProbabilityRow(tally, row, rows[row]);
+        return transitionMatrix;    // Return the created transition probability matrix
+    }
+
+    /**
+     * Fills one row of the transition probability matrix of the Markov Chain method. Rows only depend on the pairwise
+     * statistics of their own element, so the matrix can also be created a block of rows at a time
+     * (check BlockedTransitionOperator)
+     * @param tally the pairwise wins and common rankings of the input rankings, at least of this row
+     * @param row the row (element) to fill
+     * @param probabilities the row, length equal to the number of elements. Its previous contents are overwritten
+     */
+    protected abstract void fillTransitionProbabilityRow(PairwiseTally tally, int row, double[] probabilities);
+
+    /**
+     * Creates the transition operator of the Markov Chain methods. Same transition probabilities as
+     * createTransitionProbabilityMatrix, without storing the n x n matrix
+     * @param input the prepared input rankings, the operator may be shared with other methods through it
+     * @return operator answering P^T * x for the transition probability matrix P
+     */
+    protected abstract TransitionOperator createTransitionOperator(MarkovChainInput input);
+
+    /**
+     * Minimum number of rankings in which v must be better than u for the transition u -> v to be possible, for the
+     * methods based on it. Used to build the operators of such methods together
+     * @param numberOfRankings number of input rankings
+     * @return the threshold, 0 if the method is not based on one (the default)
+     */
+    protected int getWinsThreshold(int numberOfRankings) {
+        return 0;
+    }
 
     /**
      * Transforms an MC transition probabilities matrix according to the formula
@@ -44,56 +95,324 @@ public abstract class MarkovChain {
     }
 
     /**
-     * Calculates the stationary distribution of a transition probability matrix
-     * @param transitionMatrix The matrix whose stationary distribution we are looking for
-     * @return a matrix containing the stationary distribution
+     * Creates a new ranking out of a list of rankings using the Markov Chain 1 method.
+     * @param listOfRankings list containing the initial rankings
+     * @param a non negative parameter, preferably small
+     * @return an ascending sorted new ranking
      */
-    private static Matrix stationaryDistribution(Matrix transitionMatrix) {
-        // Creating a clone of the transition matrix, to calculate the stationary Distribution (no changes to the original transition matrix object)
-        Matrix tempTransitionMatrix = (Matrix) transitionMatrix.clone();
-        // Transpose the matrix
-        tempTransitionMatrix = tempTransitionMatrix.transpose();
-        // initial guess for the eigenvector
-        Matrix stationaryDistr = new Matrix(tempTransitionMatrix.getColumnDimension(), 1, 1.0 / tempTransitionMatrix.getColumnDimension());
+    public Map<String, Double> getMCMethodRanking(List<Map<String, Double>> listOfRankings, Double a) {
+        return getMCMethodRanking(listOfRankings, a, new StationaryDistributionSolver()).getRanking();
+    }
 
-        // power method - 50 iterations
-        for (int i = 0; i < 50; i++) {
-            // Multiplying the matrix
-            stationaryDistr = tempTransitionMatrix.times(stationaryDistr);
-            // Rescaling matrix values
-            stationaryDistr = stationaryDistr.times(1.0 / stationaryDistr.norm1());
+    /**
+     * Creates a new ranking out of a list of rankings using the Markov Chain method, reporting how the stationary
+     * distribution converged
+     * @param listOfRankings list containing the initial rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMCMethodRanking(List<Map<String, Double>> listOfRankings, Double a, StationaryDistributionSolver solver) {
+        return getMCMethodRanking(MarkovChainInput.fromListOfMaps(listOfRankings), a, solver);
+    }
+
+    /**
+     * Dense version of the Markov Chain method, for an input prepared once for several methods
+     * @param input the prepared input rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMCMethodRanking(MarkovChainInput input, Double a, StationaryDistributionSolver solver) {
+        return getMCMethodRanking(input, a, solver, null);
+    }
+
+    /**
+     * Dense version of the Markov Chain method, warm started from the distribution of an earlier, related run
+     * @param input the prepared input rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @param prior distribution to start the power method from, null to start from the uniform one
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMCMethodRanking(MarkovChainInput input, Double a, StationaryDistributionSolver solver,
+                                                 PriorDistribution prior) {
+        // Creating the transition probability matrix out of the pairwise statistics of the rankings
+        // and transforming it according to the formula P'(u -> v) = (1 - a)P(u -> v) + a/|S|,
+        // where a is a (preferably small) parameter and |S| the number of elements/rows of the matrix
+        Matrix transitionMatrix;
+        try (Stage stage = MetricsRegistry.global().startStage("matrix", getName())) {
+            transitionMatrix = createTransitionProbabilityMatrix(input.getPairwiseTally());
+            transformMCMatrix(transitionMatrix, a);
+            stage.set("rows", transitionMatrix.getRowDimension()).set("columns", transitionMatrix.getColumnDimension());
         }
-        return stationaryDistr;
+
+        // Computing the stationary distribution of the transformed probability matrix (already contains a)
+        StationaryDistribution stationaryDistribution = solve(solver, new DenseTransitionOperator(transitionMatrix), 0.0,
+                initialDistribution(input, prior));
+        return new MarkovChainRanking(sortedRanking(input.getRankingMatrix(), stationaryDistribution, getName()),
+                stationaryDistribution);
     }
 
     /**
-     * Creates a new ranking out of a list of rankings using the Markov Chain 1 method.
+     * Applies several Markov Chain methods (e.g. MC1, MC2 and MC3) to the same rankings with dense transition matrices.
+     * The pairwise statistics are computed once and all the matrices are made from them
+     * @param methods the Markov Chain methods to apply
+     * @param indexedRankings the initial rankings, SNP ids interned in a SnpIdDictionary
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ranking of every method, in the order of the methods
+     */
+    public static List<MarkovChainRanking> getMCMethodRankings(List<? extends MarkovChain> methods,
+                                                               IndexedRankings indexedRankings, Double a,
+                                                               StationaryDistributionSolver solver) {
+        MarkovChainInput input = MarkovChainInput.fromIndexedRankings(indexedRankings);
+        List<MarkovChainRanking> rankings = new ArrayList<>(methods.size());
+        for (MarkovChain method : methods)
+            rankings.add(method.getMCMethodRanking(input, a, solver));
+        return rankings;
+    }
+
+    /**
+     * Creates a new ranking out of a list of rankings using the Markov Chain method, without ever creating the dense
+     * transition probability matrix. Gives the same ranking as getMCMethodRanking, with memory linear in the number of
+     * elements (MC3) or one bit per element pair (MC1, MC2), so it can be used on inputs with many thousands of SNPs
      * @param listOfRankings list containing the initial rankings
      * @param a non negative parameter, preferably small
      * @return an ascending sorted new ranking
      */
-    public Map<String, Double> getMCMethodRanking(List<Map<String, Double>> listOfRankings, Double a) {
-        // Creating the transition probability matrix out of the list of rankings
-        // and transforming it according to the formula P'(u -> v) = (1 - a)P(u -> v) + a/|S|,
-        // where a is a (preferably small) parameter and |S| the number of elements/rows of the matrix
-        transformMCMatrix(createTransitionProbabilityMatrix(listOfRankings), a);
+    public Map<String, Double> getMatrixFreeMCMethodRanking(List<Map<String, Double>> listOfRankings, Double a) {
+        return getMatrixFreeMCMethodRanking(listOfRankings, a, new StationaryDistributionSolver()).getRanking();
+    }
+
+    /**
+     * Matrix-free version of getMCMethodRanking, reporting how the stationary distribution converged
+     * @param listOfRankings list containing the initial rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMatrixFreeMCMethodRanking(List<Map<String, Double>> listOfRankings, Double a,
+                                                           StationaryDistributionSolver solver) {
+        return getMatrixFreeMCMethodRanking(RankingMatrix.fromListOfMaps(listOfRankings), a, solver);
+    }
+
+    /**
+     * Matrix-free version of getMCMethodRanking, for rankings already in integer form
+     * @param indexedRankings the initial rankings, SNP ids interned in a SnpIdDictionary
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMatrixFreeMCMethodRanking(IndexedRankings indexedRankings, Double a,
+                                                           StationaryDistributionSolver solver) {
+        return getMatrixFreeMCMethodRanking(RankingMatrix.fromIndexedRankings(indexedRankings), a, solver);
+    }
 
-        // Computing the stationary distribution of the probability matrix
-        Matrix stationaryDistribution = stationaryDistribution(createTransitionProbabilityMatrix(listOfRankings));
+    /**
+     * Matrix-free version of getMCMethodRanking, for rankings already indexed and sorted
+     * @param rankingMatrix the initial rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMatrixFreeMCMethodRanking(RankingMatrix rankingMatrix, Double a,
+                                                           StationaryDistributionSolver solver) {
+        return getMatrixFreeMCMethodRanking(MarkovChainInput.of(rankingMatrix), a, solver);
+    }
 
-        Matrix result = new Matrix(stationaryDistribution.getRowDimension(), 1, 1);
+    /**
+     * Matrix-free version of getMCMethodRanking, for an input prepared once for several methods
+     * @param input the prepared input rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMatrixFreeMCMethodRanking(MarkovChainInput input, Double a,
+                                                           StationaryDistributionSolver solver) {
+        return getMatrixFreeMCMethodRanking(input, a, solver, null);
+    }
 
-        // result of aggregation is 1(max value) - stationary distribution value for this element
-        result = result.minusEquals(stationaryDistribution);
+    /**
+     * Matrix-free version of getMCMethodRanking, warm started from the distribution of an earlier, related run
+     * (e.g. slightly different a, one more ranking, a few more SNPs). The ranking is the same as without it, up to the
+     * solver tolerance, in fewer iterations (check the iterations of the stationary distribution)
+     * @param input the prepared input rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @param prior distribution to start the power method from, null to start from the uniform one
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     */
+    public MarkovChainRanking getMatrixFreeMCMethodRanking(MarkovChainInput input, Double a,
+                                                           StationaryDistributionSolver solver, PriorDistribution prior) {
+        TransitionOperator operator;
+        try (Stage stage = MetricsRegistry.global().startStage("matrix", getName())) {
+            operator = createTransitionOperator(input);
+            stage.set("rows", operator.getSize()).set("columns", operator.getSize());
+        }
+        StationaryDistribution stationaryDistribution = solve(solver, operator, a, initialDistribution(input, prior));
+        return new MarkovChainRanking(sortedRanking(input.getRankingMatrix(), stationaryDistribution, getName()),
+                stationaryDistribution);
+    }
 
-        // LinkedHashMaps retain the sequence in which the elements where put
-        Map<String, Double> unsortedRanking = new LinkedHashMap<>();
+    /**
+     * Out-of-core version of getMCMethodRanking, for inputs whose transition probability matrix does not fit in memory.
+     * The matrix is written to disk in blocks of rows and streamed through memory at every power iteration
+     * (check BlockedTransitionOperator). Gives the same ranking as getMCMethodRanking
+     * @param input the prepared input rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @param directory folder for the block files, they are deleted afterwards
+     * @param memoryBudget bytes of memory the blocks of the matrix may take
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     * @throws IOException if the block files cannot be written
+     */
+    public MarkovChainRanking getOutOfCoreMCMethodRanking(MarkovChainInput input, Double a,
+                                                          StationaryDistributionSolver solver, File directory,
+                                                          long memoryBudget) throws IOException {
+        return getOutOfCoreMCMethodRanking(input, a, solver, directory, memoryBudget, null);
+    }
 
-        // Putting the results of the ranking into a map, to later on sort it
-        for(int i = 0 ; i < stationaryDistribution.getRowDimension() ; ++i) {
-            unsortedRanking.put(RankAggregationDataTransformation.getElementIds(listOfRankings).get(i), result.get(i,0));
+    /**
+     * Out-of-core version of getMCMethodRanking, warm started from the distribution of an earlier, related run.
+     * Every power iteration reads the whole matrix from disk, so the iterations saved count the most here
+     * @param input the prepared input rankings
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @param directory folder for the block files, they are deleted afterwards
+     * @param memoryBudget bytes of memory the blocks of the matrix may take
+     * @param prior distribution to start the power method from, null to start from the uniform one
+     * @return the ascending sorted new ranking, with the iterations, residual and time of the stationary distribution solve
+     * @throws IOException if the block files cannot be written
+     */
+    public MarkovChainRanking getOutOfCoreMCMethodRanking(MarkovChainInput input, Double a,
+                                                          StationaryDistributionSolver solver, File directory,
+                                                          long memoryBudget, PriorDistribution prior) throws IOException {
+        // The matrix is written transformed, like the dense one
+        BlockedTransitionOperator blocked;
+        try (Stage stage = MetricsRegistry.global().startStage("matrix", getName())) {
+            blocked = BlockedTransitionOperator.write(this, input, a, directory, memoryBudget);
+            stage.set("rows", blocked.getSize()).set("columns", blocked.getSize())
+                    .set("blocks", blocked.getNumberOfBlocks());
+        }
+        try (BlockedTransitionOperator operator = blocked) {
+            StationaryDistribution stationaryDistribution = solve(solver, operator, 0.0, initialDistribution(input, prior));
+            return new MarkovChainRanking(sortedRanking(input.getRankingMatrix(), stationaryDistribution, getName()),
+                    stationaryDistribution);
         }
+    }
 
-        return RankAggregationDataTransformation.createSortedOutput(unsortedRanking);       // Return the sorted ranking
+    /**
+     * Applies several Markov Chain methods (e.g. MC1, MC2 and MC3) to the same rankings without transition matrices.
+     * The rankings are indexed once, and the operators of the methods based on a wins threshold (MC1, MC2) come from one
+     * count of the pairwise wins
+     * @param methods the Markov Chain methods to apply
+     * @param indexedRankings the initial rankings, SNP ids interned in a SnpIdDictionary
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @return the ranking of every method, in the order of the methods
+     */
+    public static List<MarkovChainRanking> getMatrixFreeMCMethodRankings(List<? extends MarkovChain> methods,
+                                                                         IndexedRankings indexedRankings, Double a,
+                                                                         StationaryDistributionSolver solver) {
+        return getMatrixFreeMCMethodRankings(methods, indexedRankings, a, solver,
+                Collections.<PriorDistribution>nCopies(methods.size(), null));
+    }
+
+    /**
+     * Same as getMatrixFreeMCMethodRankings, every method warm started from its own prior distribution
+     * @param methods the Markov Chain methods to apply
+     * @param indexedRankings the initial rankings, SNP ids interned in a SnpIdDictionary
+     * @param a non negative parameter, preferably small
+     * @param solver power method settings (tolerance, maximum iterations)
+     * @param priors distribution to start every method from, in the order of the methods. null elements for the uniform one
+     * @return the ranking of every method, in the order of the methods
+     */
+    public static List<MarkovChainRanking> getMatrixFreeMCMethodRankings(List<? extends MarkovChain> methods,
+                                                                         IndexedRankings indexedRankings, Double a,
+                                                                         StationaryDistributionSolver solver,
+                                                                         List<PriorDistribution> priors) {
+        if (priors.size() != methods.size())
+            throw new IllegalArgumentException("One prior distribution (or null) is needed per method");
+        MarkovChainInput input = MarkovChainInput.fromIndexedRankings(indexedRankings);
+        prepareOperators(methods, input);
+
+        List<MarkovChainRanking> rankings = new ArrayList<>(methods.size());
+        for (int i = 0; i < methods.size(); ++i)
+            rankings.add(methods.get(i).getMatrixFreeMCMethodRanking(input, a, solver, priors.get(i)));
+        return rankings;
+    }
+
+    /**
+     * Builds the matrix-free operators of several methods that will be applied to the same input, so that the operators
+     * of the methods based on a wins threshold (MC1, MC2) come from one count of the pairwise wins. Methods applied
+     * afterwards, also concurrently, find their operators ready in the input
+     * @param methods the Markov Chain methods that will be applied
+     * @param input the prepared input rankings
+     */
+    public static void prepareOperators(List<? extends MarkovChain> methods, MarkovChainInput input) {
+        // Thresholds of all the methods based on one, built together
+        int numberOfRankings = input.getRankingMatrix().getNumberOfRankings();
+        int[] thresholds = new int[methods.size()];
+        int counter = 0;
+        for (MarkovChain method : methods)
+            if (method.getWinsThreshold(numberOfRankings) > 0)
+                thresholds[counter++] = method.getWinsThreshold(numberOfRankings);
+        if (counter > 0)
+            input.prepareMajorityOperators(Arrays.copyOf(thresholds, counter));
+    }
+
+    /**
+     * @param numberOfRankings number of input rankings
+     * @return true if prepareOperators builds the matrix-free operator of this method (MC1, MC2), false if the method
+     * builds its own (MC3)
+     */
+    public boolean hasPreparedOperator(int numberOfRankings) {
+        return getWinsThreshold(numberOfRankings) > 0;
+    }
+
+    /**
+     * Helper function, name of the method in the metrics recorded
+     */
+    private String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Helper function, computes the stationary distribution, recording the iterations and residual of the power method
+     */
+    private StationaryDistribution solve(StationaryDistributionSolver solver, TransitionOperator operator, double a,
+                                         double[] initial) {
+        try (Stage stage = MetricsRegistry.global().startStage("power-iteration", getName())) {
+            StationaryDistribution stationaryDistribution = solver.solve(operator, a, initial);
+            stage.set("elements", operator.getSize()).set("iterations", stationaryDistribution.getIterations())
+                    .set("residual", stationaryDistribution.getResidual())
+                    .set("converged", stationaryDistribution.isConverged() ? 1 : 0);
+            return stationaryDistribution;
+        }
+    }
+
+    /**
+     * Helper function, maps the prior distribution onto the elements of the input, null if there is none
+     */
+    private static double[] initialDistribution(MarkovChainInput input, PriorDistribution prior) {
+        return prior == null ? null : prior.mapOnto(input.getRankingMatrix());
+    }
+
+    /**
+     * Helper function, sorts the elements by the result of the aggregation, 1(max value) - stationary distribution value.
+     * Element indices are only translated back to SNP ids when the ranking is output
+     */
+    private static SortedRanking sortedRanking(RankingMatrix rankingMatrix, StationaryDistribution stationaryDistribution,
+                                               String method) {
+        try (Stage stage = MetricsRegistry.global().startStage("sort", method)) {
+            double[] distribution = stationaryDistribution.getDistribution();
+            double[] scores = new double[distribution.length];
+            for (int i = 0; i < distribution.length; ++i) {
+                scores[i] = 1 - distribution[i];
+            }
+            stage.set("elements", distribution.length);
+            return SortedRanking.sort(rankingMatrix, scores);
+        }
     }
 }
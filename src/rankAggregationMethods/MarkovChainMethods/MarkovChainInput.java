@@ -0,0 +1,124 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import preprocessing.IndexedRankings;
+import rankAggregationMethods.RankingMatrix;
+
+import java.util.*;
+
+/**
+ * Input of the Markov Chain methods, prepared once and shared by MC1, MC2 and MC3.
+ * Holds the indexed rankings (and so the element ids, in element order) and builds what the methods need from them only
+ * once, the first time it is asked for:
+ *  - the pairwise tally (wins and common rankings of every pair), from which the dense transition matrices are made
+ *  - the matrix-free operators. MC1 and MC2 operators asked for together come from one count of the pairwise wins
+ * Built structures are kept for as long as the input is, so it should be dropped once the rankings are computed.
+ * Every structure has its own lock, so methods applied concurrently build different ones at the same time
+ */
+public class MarkovChainInput {
+    // The indexed input rankings
+    private final RankingMatrix rankingMatrix;
+    // Pairwise statistics, null until first asked for
+    private PairwiseTally tally;
+    // MC1/MC2 operators already built, by wins threshold
+    private final Map<Integer, MajorityTransitionOperator> majorityOperators = new HashMap<>();
+    // MC3 operator, null until first asked for
+    private ProportionalTransitionOperator proportionalOperator;
+    // Locks of the structures above, e.g. MC3 does not wait for the count of the pairwise wins of MC1 and MC2
+    private final Object tallyLock = new Object();
+    private final Object majorityLock = new Object();
+    private final Object proportionalLock = new Object();
+
+    private MarkovChainInput(RankingMatrix rankingMatrix) {
+        this.rankingMatrix = rankingMatrix;
+    }
+
+    /**
+     * @param rankingMatrix the indexed input rankings
+     * @return the input of the Markov Chain methods for these rankings
+     */
+    public static MarkovChainInput of(RankingMatrix rankingMatrix) {
+        return new MarkovChainInput(rankingMatrix);
+    }
+
+    /**
+     * @param listOfRankings list that contains maps with id (String) as key and the ranking (Double) as value.
+     *                        Every one of the maps is one ranking
+     * @return the input of the Markov Chain methods for these rankings
+     */
+    public static MarkovChainInput fromListOfMaps(List<Map<String, Double>> listOfRankings) {
+        return new MarkovChainInput(RankingMatrix.fromListOfMaps(listOfRankings));
+    }
+
+    /**
+     * @param indexedRankings the input rankings, SNP ids interned in a SnpIdDictionary
+     * @return the input of the Markov Chain methods for these rankings
+     */
+    public static MarkovChainInput fromIndexedRankings(IndexedRankings indexedRankings) {
+        return new MarkovChainInput(RankingMatrix.fromIndexedRankings(indexedRankings));
+    }
+
+    // Class accessors
+
+    public RankingMatrix getRankingMatrix() {
+        return rankingMatrix;
+    }
+
+    /**
+     * @return the pairwise statistics of the rankings, built on the first call
+     */
+    public PairwiseTally getPairwiseTally() {
+        synchronized (tallyLock) {
+            if (tally == null)
+                tally = PairwiseTally.fromRankingMatrix(rankingMatrix);
+            return tally;
+        }
+    }
+
+    /**
+     * @param winsThreshold minimum number of rankings in which v must be better than u for P(u -> v) to be 1/|S|
+     * @return the MC1/MC2 operator of this threshold, built on the first call
+     */
+    public MajorityTransitionOperator getMajorityOperator(int winsThreshold) {
+        synchronized (majorityLock) {
+            prepareMajorityOperators(new int[] {winsThreshold});
+            return majorityOperators.get(winsThreshold);
+        }
+    }
+
+    /**
+     * Builds the MC1/MC2 operators of several wins thresholds at once, from one count of the pairwise wins.
+     * Thresholds already built are skipped
+     * @param winsThresholds the thresholds whose operators will be asked for
+     */
+    public void prepareMajorityOperators(int[] winsThresholds) {
+        synchronized (majorityLock) {
+            Set<Integer> missing = new LinkedHashSet<>();
+            for (int winsThreshold : winsThresholds)
+                if (!majorityOperators.containsKey(winsThreshold))
+                    missing.add(winsThreshold);
+            if (missing.isEmpty())
+                return;
+
+            int[] thresholds = new int[missing.size()];
+            int counter = 0;
+            for (int winsThreshold : missing)
+                thresholds[counter++] = winsThreshold;
+
+            MajorityTransitionOperator[] operators =
+                    MajorityTransitionOperator.fromRankingMatrix(rankingMatrix, thresholds);
+            for (int t = 0; t < thresholds.length; ++t)
+                majorityOperators.put(thresholds[t], operators[t]);
+        }
+    }
+
+    /**
+     * @return the MC3 operator, built on the first call
+     */
+    public ProportionalTransitionOperator getProportionalOperator() {
+        synchronized (proportionalLock) {
+            if (proportionalOperator == null)
+                proportionalOperator = ProportionalTransitionOperator.fromRankingMatrix(rankingMatrix);
+            return proportionalOperator;
+        }
+    }
+}
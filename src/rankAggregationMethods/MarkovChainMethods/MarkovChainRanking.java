@@ -0,0 +1,47 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import rankAggregationMethods.SortedRanking;
+
+import java.util.Map;
+
+/**
+ * Ranking created by a Markov Chain method, together with the report of the stationary distribution it came from
+ */
+public class MarkovChainRanking {
+    // The aggregated ranking, sorted in ascending order. Created from sortedRanking when first asked for
+    private Map<String, Double> ranking;
+    // The aggregated ranking in primitive form, null if the ranking was given as a map
+    private final SortedRanking sortedRanking;
+    // Stationary distribution of the chain, with iterations, residual and time of the solve
+    private final StationaryDistribution stationaryDistribution;
+
+    public MarkovChainRanking(Map<String, Double> ranking, StationaryDistribution stationaryDistribution) {
+        this.ranking = ranking;
+        this.sortedRanking = null;
+        this.stationaryDistribution = stationaryDistribution;
+    }
+
+    public MarkovChainRanking(SortedRanking sortedRanking, StationaryDistribution stationaryDistribution) {
+        this.sortedRanking = sortedRanking;
+        this.stationaryDistribution = stationaryDistribution;
+    }
+
+    // Class accessors
+
+    public Map<String, Double> getRanking() {
+        if (ranking == null)
+            ranking = sortedRanking.toMap();
+        return ranking;
+    }
+
+    /**
+     * @return the ranking in primitive form, null if it was created from a map
+     */
+    public SortedRanking getSortedRanking() {
+        return sortedRanking;
+    }
+
+    public StationaryDistribution getStationaryDistribution() {
+        return stationaryDistribution;
+    }
+}
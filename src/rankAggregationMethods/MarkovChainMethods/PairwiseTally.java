@@ -0,0 +1,147 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import rankAggregationMethods.RankingMatrix;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pairwise statistics of a list of rankings, shared by the transition probability matrices of MC1, MC2 and MC3.
+ * For every pair of elements (u, v) it holds the number of rankings in which v is better (smaller value) than u,
+ * and the number of rankings that contain both elements.
+ *
+ * Wins are counted by sweeping every ranking once in sorted order, common rankings from one presence bitset per element,
+ * so building the tally takes plain array increments instead of map lookups for every (pair, ranking) combination.
+ * A tally may also hold only the pairs (u, v) of a range of rows u, to build the transition matrix a block of rows at a time
+ */
+public class PairwiseTally {
+    // Number of elements, pairs are given by element index (check RankingMatrix)
+    private final int size;
+    // Number of input rankings
+    private final int numberOfRankings;
+    // First row u held, rows [firstRow, firstRow + wins.length)
+    private final int firstRow;
+    // wins[u - firstRow][v] = number of rankings in which v is better than u
+    private final int[][] wins;
+    // common[u - firstRow][v] = number of rankings containing both u and v
+    private final int[][] common;
+
+    private PairwiseTally(int size, int numberOfRankings, int firstRow, int[][] wins, int[][] common) {
+        this.size = size;
+        this.numberOfRankings = numberOfRankings;
+        this.firstRow = firstRow;
+        this.wins = wins;
+        this.common = common;
+    }
+
+    /**
+     * Creates the tally of a list of rankings
+     * @param listOfRankings list that contains maps with id (String) as key and the ranking (Double) as value.
+     *                        Every one of the maps is one ranking
+     * @return the pairwise statistics of the rankings
+     */
+    public static PairwiseTally fromRankings(List<Map<String, Double>> listOfRankings) {
+        return fromRankingMatrix(RankingMatrix.fromListOfMaps(listOfRankings));
+    }
+
+    /**
+     * Creates the tally of already indexed rankings
+     * @param rankingMatrix the indexed input rankings
+     * @return the pairwise statistics of the rankings
+     */
+    public static PairwiseTally fromRankingMatrix(RankingMatrix rankingMatrix) {
+        return fromRankingMatrix(rankingMatrix, 0, rankingMatrix.getNumberOfElements());
+    }
+
+    /**
+     * Creates the tally of the pairs (u, v) of a range of rows u only, memory proportional to the rows
+     * @param rankingMatrix the indexed input rankings
+     * @param fromRow first row (element u) of the range
+     * @param toRow end of the range, exclusive
+     * @return the pairwise statistics of the rows of the range
+     */
+    public static PairwiseTally fromRankingMatrix(RankingMatrix rankingMatrix, int fromRow, int toRow) {
+        int size = rankingMatrix.getNumberOfElements();
+        int numberOfRankings = rankingMatrix.getNumberOfRankings();
+        if (fromRow < 0 || toRow > size || fromRow > toRow)
+            throw new IllegalArgumentException("Rows [" + fromRow + ", " + toRow + ") out of [0, " + size + ")");
+        int[][] wins = new int[toRow - fromRow][size];
+        int[][] common = new int[toRow - fromRow][size];
+
+        // WINS: in every ranking, each element loses to all the elements of the (sorted) ranking before its tie block
+        for (int k = 0; k < numberOfRankings; ++k) {
+            int[] order = rankingMatrix.getOrder(k);
+            double[] values = rankingMatrix.getSortedValues(k);
+
+            int blockStart = 0;
+            while (blockStart < order.length) {
+                int blockEnd = MajorityTransitionOperator.endOfTieBlock(values, blockStart);
+                for (int p = blockStart; p < blockEnd; ++p) {
+                    if (order[p] < fromRow || order[p] >= toRow)
+                        continue;
+                    int[] row = wins[order[p] - fromRow];
+                    for (int better = 0; better < blockStart; ++better)
+                        row[order[better]]++;
+                }
+                blockStart = blockEnd;
+            }
+        }
+
+        // COMMON RANKINGS: number of rankings both elements exist in, from the bitsets of the rankings of each element
+        int words = (numberOfRankings + 63) >>> 6;
+        long[][] presence = new long[size][words];
+        for (int k = 0; k < numberOfRankings; ++k)
+            for (int element : rankingMatrix.getOrder(k))
+                presence[element][k >>> 6] |= 1L << k;
+
+        // The whole matrix is symmetric, so only half of it is counted
+        boolean allRows = fromRow == 0 && toRow == size;
+        for (int u = fromRow; u < toRow; ++u) {
+            for (int v = allRows ? u : 0; v < size; ++v) {
+                int counter = 0;
+                for (int w = 0; w < words; ++w)
+                    counter += Long.bitCount(presence[u][w] & presence[v][w]);
+                common[u - fromRow][v] = counter;
+                if (allRows)
+                    common[v][u] = counter;
+            }
+        }
+
+        return new PairwiseTally(size, numberOfRankings, fromRow, wins, common);
+    }
+
+    // Class accessors
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getNumberOfRankings() {
+        return numberOfRankings;
+    }
+
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * @return number of rows u held, all the elements unless the tally was created for a range of rows
+     */
+    public int getNumberOfRows() {
+        return wins.length;
+    }
+
+    /**
+     * @return number of rankings in which element v is better than element u, u one of the rows held
+     */
+    public int getWins(int u, int v) {
+        return wins[u - firstRow][v];
+    }
+
+    /**
+     * @return number of rankings in which both elements u and v exist, u one of the rows held
+     */
+    public int getCommon(int u, int v) {
+        return common[u - firstRow][v];
+    }
+}
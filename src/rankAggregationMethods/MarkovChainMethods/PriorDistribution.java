@@ -0,0 +1,124 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import rankAggregationMethods.RankingMatrix;
+import rankAggregationMethods.SortedRanking;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Stationary distribution of an earlier Markov Chain run, keyed by SNP id, to warm start the power method of a related run
+ * (slightly different a, one more ranking, a few more SNPs). Being keyed by SNP id it is mapped onto any element set:
+ * SNPs the earlier run did not have start with the mean probability of the ones it had, and SNPs that are gone are dropped.
+ * It can be written to and read from a text file, one "SNP id \t probability" line per SNP, to be kept between runs
+ */
+public class PriorDistribution {
+    // Probability of every SNP of the earlier run
+    private final Map<String, Double> probabilities;
+
+    /**
+     * Class constructor
+     * @param probabilities probability of every SNP, by SNP id
+     */
+    public PriorDistribution(Map<String, Double> probabilities) {
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * Takes the stationary distribution a Markov Chain ranking was created from
+     * @param ranking result of an earlier run
+     * @return the distribution of the run, by SNP id
+     */
+    public static PriorDistribution fromRanking(MarkovChainRanking ranking) {
+        Map<String, Double> probabilities = new HashMap<>();
+        SortedRanking sortedRanking = ranking.getSortedRanking();
+        StationaryDistribution stationaryDistribution = ranking.getStationaryDistribution();
+        // The distribution is by element index, taken as is: 1 - (1 - probability) would lose the small probabilities
+        if (sortedRanking != null && stationaryDistribution != null) {
+            double[] distribution = stationaryDistribution.getDistribution();
+            for (int position = 0; position < sortedRanking.size(); ++position)
+                probabilities.put(sortedRanking.getName(position), distribution[sortedRanking.getElement(position)]);
+        }
+        // Ranking values are 1 - stationary probability
+        else
+            for (Map.Entry<String, Double> entry : ranking.getRanking().entrySet())
+                probabilities.put(entry.getKey(), 1 - entry.getValue());
+        return new PriorDistribution(probabilities);
+    }
+
+    /**
+     * Reads a distribution written by write
+     * @param file the file to read
+     * @return the distribution in the file
+     * @throws IOException if the file cannot be read or a line is not "SNP id \t probability"
+     */
+    public static PriorDistribution read(File file) throws IOException {
+        Map<String, Double> probabilities = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                int separator = line.lastIndexOf('\t');
+                if (separator < 0)
+                    throw new IOException("Not a prior distribution line: " + line);
+                try {
+                    probabilities.put(line.substring(0, separator), Double.parseDouble(line.substring(separator + 1)));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Not a probability: " + line, e);
+                }
+            }
+        }
+        return new PriorDistribution(probabilities);
+    }
+
+    /**
+     * Writes the distribution to a text file, probabilities written exactly (Double.toString)
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Double> entry : probabilities.entrySet())
+                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+        }
+    }
+
+    // Class accessors
+
+    public int size() {
+        return probabilities.size();
+    }
+
+    /**
+     * Maps the distribution onto the elements of a ranking matrix, as the initial distribution of the power method.
+     * SNPs without a probability get the mean probability of the ones with one
+     * @param rankingMatrix the rankings of the new run
+     * @return one value per element of the matrix, not normalized (the solver rescales it)
+     */
+    public double[] mapOnto(RankingMatrix rankingMatrix) {
+        int size = rankingMatrix.getNumberOfElements();
+        double[] initial = new double[size];
+        boolean[] found = new boolean[size];
+        double sum = 0.0;
+        int numberFound = 0;
+        for (int element = 0; element < size; ++element) {
+            Double probability = probabilities.get(rankingMatrix.getElementId(element));
+            if (probability != null && probability > 0.0) {
+                initial[element] = probability;
+                found[element] = true;
+                sum += probability;
+                numberFound++;
+            }
+        }
+
+        // New SNPs, neither favoured nor left out
+        double mean = numberFound > 0 ? sum / numberFound : 1.0 / size;
+        for (int element = 0; element < size; ++element)
+            if (!found[element])
+                initial[element] = mean;
+        return initial;
+    }
+}
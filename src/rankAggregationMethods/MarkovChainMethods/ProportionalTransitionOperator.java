@@ -0,0 +1,220 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import rankAggregationMethods.RankingMatrix;
+
+import java.util.*;
+
+/**
+ * Transition operator of the MC3 method [Lin, 2010], P(u -> v) = wins(u, v) / (common(u, v) * |S|), where wins(u, v) is the
+ * number of rankings in which v is better than u and common(u, v) the number of rankings containing both elements.
+ * The product P^T * x is computed on the fly from the sorted rankings, so nothing of size n x n is ever stored.
+ *
+ * common(u, v) only depends on which rankings contain u and which contain v, so elements are grouped by that presence
+ * pattern. Every product costs O(m * n * g), g being the number of different presence patterns (1 when all rankings contain
+ * the same elements). The weight of a pair of groups, 1 / (common * |S|), is kept in a g x g table while that table is
+ * small (MAX_WEIGHT_TABLE_ENTRIES). With more groups, e.g. partial rankings where most SNPs have their own pattern, it is
+ * computed on the fly from the presence bits of the two groups, so the memory stays O(n + g * m / 64)
+ */
+public class ProportionalTransitionOperator implements TransitionOperator {
+    // Largest g x g table of group weights kept, 8 MB
+    private static final int MAX_WEIGHT_TABLE_ENTRIES = 1 << 20;
+
+    // Number of elements/states
+    private final int size;
+    // The indexed input rankings
+    private final RankingMatrix rankingMatrix;
+    // Presence group of every element
+    private final int[] groupOfElement;
+    // Groups whose elements exist in ranking k
+    private final int[][] groupsOfRanking;
+    // Presence pattern of every group, bit k set if its elements exist in ranking k
+    private final long[][] patterns;
+    // reciprocals[c] = 1 / (c * |S|), the weight of c common rankings, 0 for none
+    private final double[] reciprocals;
+    // weights[g][h] = 1 / (common rankings of groups g and h * |S|), null if there are too many groups to keep it
+    private final double[][] weights;
+    // Probability of staying in the same state, P(u -> u)
+    private final double[] stayProbabilities;
+    // Sum of x over the elements already passed, per group, allocated once per thread and reused by every product.
+    // The operator is shared by the methods using the same input, which may run concurrently
+    private final ThreadLocal<double[]> worsePerGroupBuffer;
+
+    private ProportionalTransitionOperator(RankingMatrix rankingMatrix, int[] groupOfElement, int[][] groupsOfRanking,
+                                           long[][] patterns, double[] reciprocals, double[][] weights,
+                                           double[] stayProbabilities) {
+        this.size = rankingMatrix.getNumberOfElements();
+        this.rankingMatrix = rankingMatrix;
+        this.groupOfElement = groupOfElement;
+        this.groupsOfRanking = groupsOfRanking;
+        this.patterns = patterns;
+        this.reciprocals = reciprocals;
+        this.weights = weights;
+        this.stayProbabilities = stayProbabilities;
+        final int numberOfGroups = patterns.length;
+        this.worsePerGroupBuffer = new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue() {
+                return new double[numberOfGroups];
+            }
+        };
+    }
+
+    /**
+     * Creates the MC3 operator of the given rankings
+     * @param rankingMatrix the indexed input rankings
+     * @return the transition operator
+     */
+    public static ProportionalTransitionOperator fromRankingMatrix(RankingMatrix rankingMatrix) {
+        int size = rankingMatrix.getNumberOfElements();
+        int numberOfRankings = rankingMatrix.getNumberOfRankings();
+
+        // Rankings every element exists in
+        BitSet[] presence = new BitSet[size];
+        for (int element = 0; element < size; ++element)
+            presence[element] = new BitSet(numberOfRankings);
+        for (int k = 0; k < numberOfRankings; ++k)
+            for (int element : rankingMatrix.getOrder(k))
+                presence[element].set(k);
+
+        // Group the elements by presence pattern
+        Map<BitSet, Integer> groupOfPattern = new HashMap<>();
+        List<BitSet> patternList = new ArrayList<>();
+        int[] groupOfElement = new int[size];
+        for (int element = 0; element < size; ++element) {
+            Integer group = groupOfPattern.get(presence[element]);
+            if (group == null) {
+                group = patternList.size();
+                groupOfPattern.put(presence[element], group);
+                patternList.add(presence[element]);
+            }
+            groupOfElement[element] = group;
+        }
+
+        int numberOfGroups = patternList.size();
+        int words = (numberOfRankings + 63) >>> 6;
+        long[][] patterns = new long[numberOfGroups][];
+        for (int g = 0; g < numberOfGroups; ++g)
+            patterns[g] = Arrays.copyOf(patternList.get(g).toLongArray(), words);
+        double[] reciprocals = new double[numberOfRankings + 1];
+        for (int c = 1; c <= numberOfRankings; ++c)
+            reciprocals[c] = 1.0 / (c * (double) size);
+
+        double[][] weights = null;
+        if ((long) numberOfGroups * numberOfGroups <= MAX_WEIGHT_TABLE_ENTRIES) {
+            weights = new double[numberOfGroups][numberOfGroups];
+            for (int g = 0; g < numberOfGroups; ++g)
+                for (int h = 0; h < numberOfGroups; ++h)
+                    weights[g][h] = reciprocals[commonRankings(patterns[g], patterns[h])];
+        }
+
+        int[][] groupsOfRanking = new int[numberOfRankings][];
+        for (int k = 0; k < numberOfRankings; ++k) {
+            int counter = 0;
+            int[] groups = new int[numberOfGroups];
+            for (int g = 0; g < numberOfGroups; ++g)
+                if ((patterns[g][k >>> 6] & (1L << k)) != 0)
+                    groups[counter++] = g;
+            groupsOfRanking[k] = Arrays.copyOf(groups, counter);
+        }
+
+        // P(u -> u) = 1 - sum of P(u -> v) over the elements v that are better than u in some ranking.
+        // Sweeping each ranking from best to worst, counting the elements already passed per group
+        double[] stayProbabilities = new double[size];
+        Arrays.fill(stayProbabilities, 1.0);
+        int[] betterPerGroup = new int[numberOfGroups];
+        for (int k = 0; k < numberOfRankings; ++k) {
+            int[] order = rankingMatrix.getOrder(k);
+            double[] values = rankingMatrix.getSortedValues(k);
+            Arrays.fill(betterPerGroup, 0);
+
+            int blockStart = 0;
+            while (blockStart < order.length) {
+                int blockEnd = MajorityTransitionOperator.endOfTieBlock(values, blockStart);
+                for (int p = blockStart; p < blockEnd; ++p) {
+                    int group = groupOfElement[order[p]];
+                    for (int g : groupsOfRanking[k])
+                        stayProbabilities[order[p]] -= (weights != null ? weights[group][g]
+                                : reciprocals[commonRankings(patterns[group], patterns[g])]) * betterPerGroup[g];
+                }
+                for (int p = blockStart; p < blockEnd; ++p)
+                    betterPerGroup[groupOfElement[order[p]]]++;
+                blockStart = blockEnd;
+            }
+        }
+
+        return new ProportionalTransitionOperator(rankingMatrix, groupOfElement, groupsOfRanking, patterns, reciprocals,
+                weights, stayProbabilities);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of different presence patterns of the elements
+     */
+    public int getNumberOfGroups() {
+        return patterns.length;
+    }
+
+    public void multiplyTransposed(double[] x, double[] result) {
+        // Diagonal part of the product
+        for (int element = 0; element < size; ++element)
+            result[element] = x[element] * stayProbabilities[element];
+
+        double[] worsePerGroup = worsePerGroupBuffer.get();
+
+        // Every element v receives x[u] * P(u -> v) from the elements u that are worse than v, so each ranking is swept
+        // from worst to best
+        for (int k = 0; k < rankingMatrix.getNumberOfRankings(); ++k) {
+            int[] order = rankingMatrix.getOrder(k);
+            double[] values = rankingMatrix.getSortedValues(k);
+            int[] groups = groupsOfRanking[k];
+            Arrays.fill(worsePerGroup, 0.0);
+
+            int blockEnd = order.length;
+            while (blockEnd > 0) {
+                int blockStart = startOfTieBlock(values, blockEnd);
+                for (int p = blockStart; p < blockEnd; ++p) {
+                    int group = groupOfElement[order[p]];
+                    double received = 0.0;
+                    if (weights != null) {
+                        double[] columnWeights = weights[group];
+                        for (int g : groups)
+                            received += columnWeights[g] * worsePerGroup[g];
+                    }
+                    else {
+                        long[] pattern = patterns[group];
+                        for (int g : groups)
+                            if (worsePerGroup[g] != 0.0)
+                                received += reciprocals[commonRankings(pattern, patterns[g])] * worsePerGroup[g];
+                    }
+                    result[order[p]] += received;
+                }
+                for (int p = blockStart; p < blockEnd; ++p)
+                    worsePerGroup[groupOfElement[order[p]]] += x[order[p]];
+                blockEnd = blockStart;
+            }
+        }
+    }
+
+    /**
+     * Helper function, number of rankings two presence patterns have in common
+     */
+    private static int commonRankings(long[] pattern, long[] otherPattern) {
+        int common = 0;
+        for (int w = 0; w < pattern.length; ++w)
+            common += Long.bitCount(pattern[w] & otherPattern[w]);
+        return common;
+    }
+
+    /**
+     * Helper function, returns the position of the start of the block of equal values ending (exclusive) at blockEnd
+     */
+    private static int startOfTieBlock(double[] values, int blockEnd) {
+        int blockStart = blockEnd - 1;
+        while (blockStart > 0 && values[blockStart - 1] == values[blockEnd - 1])
+            blockStart--;
+        return blockStart;
+    }
+}
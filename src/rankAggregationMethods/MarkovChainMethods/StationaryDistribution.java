@@ -0,0 +1,53 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+/**
+ * Result of a StationaryDistributionSolver run: the distribution itself and how the power method got there
+ */
+public class StationaryDistribution {
+    // Probability of every element/state, in the order of the transition operator
+    private final double[] distribution;
+    // Number of power iterations performed
+    private final int iterations;
+    // L1 distance between the last two iterates
+    private final double residual;
+    // Whether the residual dropped below the solver tolerance before the iteration budget ran out
+    private final boolean converged;
+    // Wall time of the solve, in nanoseconds
+    private final long elapsedNanos;
+
+    public StationaryDistribution(double[] distribution, int iterations, double residual, boolean converged, long elapsedNanos) {
+        this.distribution = distribution;
+        this.iterations = iterations;
+        this.residual = residual;
+        this.converged = converged;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // Class accessors
+
+    public double[] getDistribution() {
+        return distribution;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public double getResidual() {
+        return residual;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return (converged ? "converged" : "not converged") + " after " + iterations + " iterations, residual " + residual
+                + ", " + (elapsedNanos / 1000000) + " ms";
+    }
+}
@@ -0,0 +1,137 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+import java.util.Arrays;
+
+/**
+ * Power method for the stationary distribution of the transformed chain P'(u -> v) = (1 - a)P(u -> v) + a/|S|.
+ * Iterates until the L1 distance between two successive iterates is below a tolerance, or until the iteration budget
+ * is used up, and reports which of the two happened
+ */
+public class StationaryDistributionSolver {
+    /** Default tolerance on the L1 residual */
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+    /** Default maximum number of power iterations */
+    public static final int DEFAULT_MAX_ITERATIONS = 1000;
+
+    // Stop when the L1 distance between two successive iterates gets smaller than this
+    private final double tolerance;
+    // Maximum number of power iterations
+    private final int maxIterations;
+
+    /**
+     * Creates a solver with the default tolerance and iteration budget
+     */
+    public StationaryDistributionSolver() {
+        this(DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * @param tolerance non-negative threshold on the L1 residual. 0 always runs the whole iteration budget
+     * @param maxIterations positive maximum number of power iterations
+     */
+    public StationaryDistributionSolver(double tolerance, int maxIterations) {
+        if (tolerance < 0 || maxIterations < 1)
+            throw new IllegalArgumentException("Tolerance must be non-negative and maxIterations positive");
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    // Class accessors
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Calculates the stationary distribution of the transformed chain, starting from the uniform distribution
+     * @param operator the transition operator of P
+     * @param a parameter a of the formula, non-negative Double value (0 uses P as is)
+     * @return the stationary distribution along with the iterations, residual and time it took
+     */
+    public StationaryDistribution solve(TransitionOperator operator, double a) {
+        return solve(operator, a, null);
+    }
+
+    /**
+     * Calculates the stationary distribution of the transformed chain, starting from a given distribution (warm start).
+     * The closer the initial distribution is to the stationary one, e.g. the result of a run with a slightly different a
+     * or one more ranking, the fewer iterations are needed. The result is the same as starting from the uniform one,
+     * up to the tolerance
+     * @param operator the transition operator of P
+     * @param a parameter a of the formula, non-negative Double value (0 uses P as is)
+     * @param initial initial distribution, one non-negative value per state, not modified. null for the uniform one
+     * @return the stationary distribution along with the iterations, residual and time it took
+     */
+    public StationaryDistribution solve(TransitionOperator operator, double a, double[] initial) {
+        long start = System.nanoTime();
+        int size = operator.getSize();
+
+        // initial guess for the eigenvector
+        double[] current = new double[size];
+        if (initial == null)
+            Arrays.fill(current, 1.0 / size);
+        else
+            initialDistribution(initial, current);
+        double[] next = new double[size];
+
+        int iterations = 0;
+        double residual = Double.POSITIVE_INFINITY;
+
+        while (iterations < maxIterations && residual > tolerance) {
+            operator.multiplyTransposed(current, next);
+
+            // P'^T * x = (1 - a) P^T * x + a/|S| * (sum of x)
+            double teleport = 0.0;
+            if (a != 0.0) {
+                for (double value : current)
+                    teleport += value;
+                teleport *= a / size;
+            }
+            double norm = 0.0;
+            for (int j = 0; j < size; ++j) {
+                next[j] = (1 - a) * next[j] + teleport;
+                norm += Math.abs(next[j]);
+            }
+
+            // Rescale and measure how far the iterate moved
+            residual = 0.0;
+            for (int j = 0; j < size; ++j) {
+                next[j] /= norm;
+                residual += Math.abs(next[j] - current[j]);
+            }
+
+            double[] swap = current;
+            current = next;
+            next = swap;
+            iterations++;
+        }
+
+        return new StationaryDistribution(current, iterations, residual, residual <= tolerance, System.nanoTime() - start);
+    }
+
+    /**
+     * Helper function, copies the initial distribution rescaled to sum 1. Falls back to the uniform distribution if it has
+     * no positive value
+     */
+    private static void initialDistribution(double[] initial, double[] current) {
+        if (initial.length != current.length)
+            throw new IllegalArgumentException("Initial distribution has " + initial.length + " states instead of "
+                    + current.length);
+
+        double sum = 0.0;
+        for (int j = 0; j < current.length; ++j) {
+            // Negative or NaN values are no probabilities
+            current[j] = initial[j] > 0.0 ? initial[j] : 0.0;
+            sum += current[j];
+        }
+        if (sum > 0.0 && !Double.isInfinite(sum))
+            for (int j = 0; j < current.length; ++j)
+                current[j] /= sum;
+        else
+            Arrays.fill(current, 1.0 / current.length);
+    }
+}
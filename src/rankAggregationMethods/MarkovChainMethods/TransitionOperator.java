@@ -0,0 +1,20 @@
+package rankAggregationMethods.MarkovChainMethods;
+
+/**
+ * Transition probability matrix P of a Markov Chain method, seen only through its product with a vector.
+ * Implementations may compute the product on the fly, so that the n x n matrix never needs to exist in memory
+ */
+public interface TransitionOperator {
+
+    /**
+     * @return the number of states (elements) of the chain, equal to the number of rows/columns of P
+     */
+    int getSize();
+
+    /**
+     * Computes result = P^T * x, the distribution after one step of the chain when starting from x
+     * @param x distribution over the states, length equal to getSize()
+     * @param result array to store the product in, length equal to getSize(). Its previous contents are overwritten
+     */
+    void multiplyTransposed(double[] x, double[] result);
+}
@@ -1,36 +1,37 @@
 package rankAggregationMethods;
 
-import javafx.util.Pair;
-
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Created by Katerina Intzevidou on 22-May-17.
  * Email: <aintzevi@csd.auth.gr> <intz.katerina@gmail.com>
  */
 public class RankAggregationDataTransformation {
+    // Index sorts of at least this many elements run in parallel
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+    // Parallel sort tasks are not split below this size
+    private static final int PARALLEL_SORT_CHUNK_SIZE = 1 << 13;
+    // Ranges of at most this many elements are sorted by insertion
+    private static final int INSERTION_SORT_SIZE = 32;
 
     // Methods
 
     /**
      * Finds and returns all the elements that exist in all the maps of the input list. The maps don't necessarily contain the same elements,
      * or the same number of elements.
-     * @return A list (of String) of the unique ids existing in all the maps of the input list
+     * @return A list (of String) of the unique ids existing in all the maps of the input list, in order of first appearance
      */
     public static List<String> getElementIds (List<Map<String, Double>> inputListOfMaps) {
-        // List to store the ids
-        List<String> ids = new ArrayList<>();
+        // Set to store the ids -- linked hash sets keep the insertion order and ignore ids that are already in
+        Set<String> ids = new LinkedHashSet<>();
         // Iterate through the list maps
         for(Map<String, Double> currentMap : inputListOfMaps) {
-            // Iterate through the current map
-            for(Map.Entry<String, Double> entry : currentMap.entrySet()) {
-                // If the key of the entry (id : type String) does not already exist in the ids array list, add it
-                if(!ids.contains(entry.getKey()))
-                    ids.add(entry.getKey());        // Adding key in the list
-            }
+            ids.addAll(currentMap.keySet());
         }
         // Return the list with all the ids contained in the maps (unique ids, only appearing once in the final list)
-        return ids;
+        return new ArrayList<>(ids);
     }
 
     /**
@@ -44,59 +45,171 @@ public class RankAggregationDataTransformation {
 
         // Iterate through the list maps
         for(Map<String, Double> currentMap : inputListOfMaps) {
-            // If the element exists in the current map (is one of the keys)
-            if(currentMap.keySet().contains(element))
-                // Add the respective value in the rankings list
-                rankings.add(currentMap.get(element));
+            // If the element exists in the current map (is one of the keys), add the respective value in the rankings list
+            Double value = currentMap.get(element);
+            if(value != null)
+                rankings.add(value);
         }
         return rankings; // Return all the ranking values associated with this element
     }
 
     /**
-     * Returns all the rankings for all the elements given as input
+     * Returns all the rankings for all the elements given as input, in one pass over the maps
+     * (for the columnar, primitive form of the rankings check RankingMatrix)
      * @param idList List of the ids of the elements that we want to get the rankings of
      * @return Map containing all the items by id and their respective rankings
      */
     public static Map<String, List<Double>> getRankingsOfAllElements(List<Map<String, Double>> inputListOfMaps, List<String> idList) {
         // Map to store the rankings corresponding to one specific element
         Map<String, List<Double>> rankingsOfAllElements = new HashMap<>();
-        // Iterate through the element id list
         for (String currentId : idList) {
-            // Get all the rankings of the current element and save this list in the rankingsOfAllElements map, along with the id as key
-            rankingsOfAllElements.put(currentId, getRankingsOfAnElement(inputListOfMaps, currentId));
+            rankingsOfAllElements.put(currentId, new ArrayList<Double>(inputListOfMaps.size()));
+        }
+        // Iterate through the maps once, adding every value to the list of its element (if the element was asked for)
+        for (Map<String, Double> currentMap : inputListOfMaps) {
+            for (Map.Entry<String, Double> entry : currentMap.entrySet()) {
+                List<Double> rankings = rankingsOfAllElements.get(entry.getKey());
+                if (rankings != null)
+                    rankings.add(entry.getValue());
+            }
         }
         return rankingsOfAllElements;   // Return the map with the rankings
     }
 
     /**
-     * Creates and returns the sorted ranking result
+     * Creates and returns the sorted ranking result. Equal values keep the order of the input map
      * @param unsortedRankingMap Map containing entries of an element ID(Key - String) and its respective score (Value - Double) in a ranking
      * @return A Map with the values of the input Map sorted
      */
     public static Map<String, Double> createSortedOutput (Map<String, Double> unsortedRankingMap) {
-        // Turn Map into list of pairs to do the sorting
-        List<Pair<String, Double>> listOfElementsAndRanks = new ArrayList<>();
+        // Turn Map into a list of ids and an array of values to do the sorting
+        List<String> ids = new ArrayList<>(unsortedRankingMap.size());
+        double[] values = new double[unsortedRankingMap.size()];
 
         for(Map.Entry<String, Double> currentEntry : unsortedRankingMap.entrySet()) {
-            listOfElementsAndRanks.add(new Pair<>(currentEntry.getKey(), currentEntry.getValue()));     // Add the map values into pairs list
+            values[ids.size()] = currentEntry.getValue();
+            ids.add(currentEntry.getKey());
+        }
+
+        // Sorting the positions based on the value (rank, score), then adding them in the map in the proper ascending order
+        return SortedRanking.sort(ids, values).toMap();
+    }
+
+    /**
+     * Sorts the ids of a ranking by ascending value, keeping the two arrays aligned. Equal values keep their initial order
+     * @param ids ids of the ranking elements
+     * @param values value of every element, aligned with ids
+     */
+    public static void sortByValue(int[] ids, double[] values) {
+        int[] positions = new int[ids.length];
+        for (int p = 0; p < positions.length; ++p)
+            positions[p] = p;
+        sortIndicesByValue(positions, values);
+
+        int[] sortedIds = new int[ids.length];
+        double[] sortedValues = new double[values.length];
+        for (int p = 0; p < positions.length; ++p) {
+            sortedIds[p] = ids[positions[p]];
+            sortedValues[p] = values[positions[p]];
+        }
+        System.arraycopy(sortedIds, 0, ids, 0, ids.length);
+        System.arraycopy(sortedValues, 0, values, 0, values.length);
+    }
+
+    /**
+     * Sorts indices by the ascending value they point to (as Double.compare orders them), without boxing.
+     * The sort is a stable merge sort, so equal values keep their initial order. Large arrays are sorted in parallel,
+     * in the common fork/join pool, with the same result
+     * @param indices the indices to sort, positions of the values array
+     * @param values the values the indices point to, not modified
+     */
+    public static void sortIndicesByValue(int[] indices, double[] values) {
+        int[] buffer = new int[indices.length];
+        if (indices.length >= PARALLEL_SORT_THRESHOLD)
+            ForkJoinPool.commonPool().invoke(new SortTask(indices, buffer, 0, indices.length, values));
+        else
+            mergeSort(indices, buffer, 0, indices.length, values);
+    }
+
+    /**
+     * Helper function, sorts indices[from, to) using buffer[from, to) as scratch space
+     */
+    private static void mergeSort(int[] indices, int[] buffer, int from, int to, double[] values) {
+        if (to - from <= INSERTION_SORT_SIZE) {
+            insertionSort(indices, from, to, values);
+            return;
         }
+        int middle = (from + to) >>> 1;
+        mergeSort(indices, buffer, from, middle, values);
+        mergeSort(indices, buffer, middle, to, values);
+        merge(indices, buffer, from, middle, to, values);
+    }
 
-        // Sorting the list of pairs based on the value (rank, score)
-        Collections.sort(listOfElementsAndRanks, new Comparator<Pair<String, Double>>() {
-            @Override
-            public int compare(final Pair<String, Double> o1, final Pair<String, Double> o2) {
-                return Double.compare(o1.getValue(), o2.getValue());
+    /**
+     * Helper function, stable insertion sort of indices[from, to)
+     */
+    private static void insertionSort(int[] indices, int from, int to, double[] values) {
+        for (int i = from + 1; i < to; ++i) {
+            int index = indices[i];
+            double value = values[index];
+            int j = i - 1;
+            while (j >= from && Double.compare(values[indices[j]], value) > 0) {
+                indices[j + 1] = indices[j];
+                j--;
             }
-        });
+            indices[j + 1] = index;
+        }
+    }
+
+    /**
+     * Helper function, merges the sorted halves indices[from, middle) and indices[middle, to). On equal values the
+     * left half goes first, so the merge is stable
+     */
+    private static void merge(int[] indices, int[] buffer, int from, int middle, int to, double[] values) {
+        // Already in order
+        if (Double.compare(values[indices[middle - 1]], values[indices[middle]]) <= 0)
+            return;
 
-        // Map to save the final, sorted ranking
-        Map <String, Double> sortedRankingMap = new LinkedHashMap<>();      // linked hash maps keep the insertion order
+        System.arraycopy(indices, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int p = from; p < to; ++p) {
+            if (right >= to || (left < middle && Double.compare(values[buffer[left]], values[buffer[right]]) <= 0))
+                indices[p] = buffer[left++];
+            else
+                indices[p] = buffer[right++];
+        }
+    }
 
-        // Iterating through the list of pairs and adding the values in the map in the proper ascending order.
-        for (Pair<String, Double> currentPair : listOfElementsAndRanks) {
-            sortedRankingMap.put(currentPair.getKey(), currentPair.getValue());
+    /**
+     * Fork/join task sorting a range of indices, sorting its halves in parallel until they are small enough
+     */
+    private static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] indices;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+        private final double[] values;
+
+        SortTask(int[] indices, int[] buffer, int from, int to, double[] values) {
+            this.indices = indices;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.values = values;
         }
 
-        return sortedRankingMap;
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_SORT_CHUNK_SIZE) {
+                mergeSort(indices, buffer, from, to, values);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(indices, buffer, from, middle, values), new SortTask(indices, buffer, middle, to, values));
+            merge(indices, buffer, from, middle, to, values);
+        }
     }
 }
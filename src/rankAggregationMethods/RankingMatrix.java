@@ -0,0 +1,269 @@
+package rankAggregationMethods;
+
+import metrics.MetricsRegistry;
+import metrics.Stage;
+import preprocessing.IndexedRanking;
+import preprocessing.IndexedRankings;
+import preprocessing.SnpIdDictionary;
+
+import java.util.*;
+
+/**
+ * Immutable, columnar form of the input rankings, shared by the Borda and Markov Chain methods.
+ * Every element (SNP) has an index in [0, n). Every ranking k is stored as:
+ *  - a column of n doubles, the value of every element in ranking k, NaN if the element is not in the ranking
+ *  - a presence bitmap, bit e set if element e is in ranking k (NaN only marks absence, the bitmap is what counts)
+ *  - the indices of its elements sorted by ascending value (best first), along with the sorted values
+ *
+ * Element indices follow the dictionary order. For rankings interned in a new dictionary, that is the same order as
+ * RankAggregationDataTransformation.getElementIds
+ */
+public class RankingMatrix {
+    // Dictionary the element names come from
+    private final SnpIdDictionary dictionary;
+    // Dictionary id of every element, null if element index and dictionary id are the same
+    private final int[] dictionaryIds;
+    // Number of elements
+    private final int size;
+    // columns[k][e] = value of element e in ranking k, NaN if e is not in ranking k
+    private final double[][] columns;
+    // presence[k] has bit e set if element e is in ranking k
+    private final long[][] presence;
+    // orders[k] contains the indices of the elements of ranking k, sorted by ascending value
+    private final int[][] orders;
+    // sortedValues[k][p] is the value of element orders[k][p] in ranking k
+    private final double[][] sortedValues;
+
+    private RankingMatrix(SnpIdDictionary dictionary, int[] dictionaryIds, int size, double[][] columns, long[][] presence,
+                          int[][] orders, double[][] sortedValues) {
+        this.dictionary = dictionary;
+        this.dictionaryIds = dictionaryIds;
+        this.size = size;
+        this.columns = columns;
+        this.presence = presence;
+        this.orders = orders;
+        this.sortedValues = sortedValues;
+    }
+
+    /**
+     * Creates the matrix of a list of rankings, interning their ids in a new dictionary
+     * @param listOfRankings list that contains maps with id (String) as key and the ranking (Double) as value.
+     *                        Every one of the maps is one ranking
+     * @return the rankings in columnar form
+     */
+    public static RankingMatrix fromListOfMaps(List<Map<String, Double>> listOfRankings) {
+        return fromIndexedRankings(IndexedRankings.fromListOfMaps(listOfRankings));
+    }
+
+    /**
+     * Creates the matrix of rankings already in integer form, in one pass over the rankings.
+     * Dictionary ids that are in none of the rankings do not become elements, so the dictionary may be shared with other inputs
+     * @param indexedRankings the input rankings
+     * @return the rankings in columnar form
+     */
+    public static RankingMatrix fromIndexedRankings(IndexedRankings indexedRankings) {
+        try (Stage stage = MetricsRegistry.global().startStage("transform", null)) {
+            RankingMatrix rankingMatrix = columnsOf(indexedRankings);
+            stage.set("elements", rankingMatrix.getNumberOfElements())
+                    .set("rankings", rankingMatrix.getNumberOfRankings());
+            return rankingMatrix;
+        }
+    }
+
+    /**
+     * Helper function, creates the matrix of rankings already in integer form (check fromIndexedRankings)
+     */
+    private static RankingMatrix columnsOf(IndexedRankings indexedRankings) {
+        SnpIdDictionary dictionary = indexedRankings.getDictionary();
+        int numberOfRankings = indexedRankings.getNumberOfRankings();
+        int size = dictionary.size();
+        int words = (size + 63) >>> 6;
+
+        double[][] columns = new double[numberOfRankings][size];
+        long[][] presence = new long[numberOfRankings][words];
+        int[][] orders = new int[numberOfRankings][];
+        double[][] sortedValues = new double[numberOfRankings][];
+        // Elements that are in at least one of the rankings
+        long[] presentAnywhere = new long[words];
+
+        for (int k = 0; k < numberOfRankings; ++k) {
+            IndexedRanking ranking = indexedRankings.getRankings().get(k);
+            double[] column = columns[k];
+            long[] bitmap = presence[k];
+            Arrays.fill(column, Double.NaN);
+
+            for (int p = 0; p < ranking.size(); ++p) {
+                int id = ranking.getIds()[p];
+                column[id] = ranking.getValues()[p];
+                bitmap[id >>> 6] |= 1L << id;
+            }
+            for (int w = 0; w < words; ++w)
+                presentAnywhere[w] |= bitmap[w];
+
+            // Indexed rankings are already sorted by value
+            orders[k] = ranking.getIds().clone();
+            sortedValues[k] = ranking.getValues();
+        }
+
+        int numberOfPresent = 0;
+        for (long word : presentAnywhere)
+            numberOfPresent += Long.bitCount(word);
+        if (numberOfPresent == size)
+            return new RankingMatrix(dictionary, null, size, columns, presence, orders, sortedValues);
+
+        // Some dictionary ids are in none of the rankings, remove them and renumber the rest
+        return compacted(dictionary, presentAnywhere, numberOfPresent, columns, presence, orders, sortedValues);
+    }
+
+    /**
+     * Helper function, keeps only the elements of the given bitmap, renumbering them in dictionary order
+     */
+    private static RankingMatrix compacted(SnpIdDictionary dictionary, long[] keep, int newSize, double[][] columns,
+                                           long[][] presence, int[][] orders, double[][] sortedValues) {
+        int[] dictionaryIds = new int[newSize];
+        int[] newIndex = new int[dictionary.size()];
+        int element = 0;
+        for (int id = 0; id < dictionary.size(); ++id) {
+            if ((keep[id >>> 6] & (1L << id)) != 0) {
+                newIndex[id] = element;
+                dictionaryIds[element++] = id;
+            }
+        }
+
+        int words = (newSize + 63) >>> 6;
+        double[][] newColumns = new double[columns.length][newSize];
+        long[][] newPresence = new long[columns.length][words];
+        for (int k = 0; k < columns.length; ++k) {
+            for (int e = 0; e < newSize; ++e)
+                newColumns[k][e] = columns[k][dictionaryIds[e]];
+            for (int p = 0; p < orders[k].length; ++p) {
+                int e = newIndex[orders[k][p]];
+                orders[k][p] = e;
+                newPresence[k][e >>> 6] |= 1L << e;
+            }
+        }
+        return new RankingMatrix(dictionary, dictionaryIds, newSize, newColumns, newPresence, orders, sortedValues);
+    }
+
+    // Class accessors
+
+    public int getNumberOfElements() {
+        return size;
+    }
+
+    public int getNumberOfRankings() {
+        return columns.length;
+    }
+
+    public SnpIdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @param element index of the element
+     * @return the dictionary id of the element
+     */
+    public int getDictionaryId(int element) {
+        return dictionaryIds == null ? element : dictionaryIds[element];
+    }
+
+    /**
+     * @param element index of the element
+     * @return the name (SNP id) of the element
+     */
+    public String getElementId(int element) {
+        return dictionary.getName(getDictionaryId(element));
+    }
+
+    /**
+     * @return the names of all the elements, position in the list is the element index
+     */
+    public List<String> getElementIds() {
+        List<String> elementIds = new ArrayList<>(size);
+        for (int element = 0; element < size; ++element)
+            elementIds.add(getElementId(element));
+        return elementIds;
+    }
+
+    /**
+     * @return view of the names of all the elements, position in the list is the element index.
+     *         Names are only looked up when asked for
+     */
+    public List<String> getElementNames() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int element) {
+                return getElementId(element);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return true if the element is in the ranking
+     */
+    public boolean isPresent(int ranking, int element) {
+        return (presence[ranking][element >>> 6] & (1L << element)) != 0;
+    }
+
+    /**
+     * @return the value of the element in the ranking, NaN if the element is not in the ranking
+     */
+    public double getValue(int ranking, int element) {
+        return columns[ranking][element];
+    }
+
+    /**
+     * @param ranking index of the ranking
+     * @return the value of every element in the ranking, NaN for the elements it does not contain.
+     *         Shared, must not be modified
+     */
+    public double[] getColumn(int ranking) {
+        return columns[ranking];
+    }
+
+    /**
+     * @param ranking index of the ranking
+     * @return presence bitmap of the ranking, bit e of word e / 64 set if element e is in it. Shared, must not be modified
+     */
+    public long[] getPresence(int ranking) {
+        return presence[ranking];
+    }
+
+    /**
+     * Copies the values of one element, from every ranking it is in, in ranking order
+     * @param element index of the element
+     * @param buffer array to copy the values to, with room for at least getNumberOfRankings() values
+     * @return the number of values copied
+     */
+    public int copyValuesOf(int element, double[] buffer) {
+        int counter = 0;
+        int word = element >>> 6;
+        long bit = 1L << element;
+        for (int k = 0; k < columns.length; ++k) {
+            if ((presence[k][word] & bit) != 0)
+                buffer[counter++] = columns[k][element];
+        }
+        return counter;
+    }
+
+    /**
+     * @param ranking index of the ranking
+     * @return element indices of the ranking, best (smallest value) first. Shared, must not be modified
+     */
+    public int[] getOrder(int ranking) {
+        return orders[ranking];
+    }
+
+    /**
+     * @param ranking index of the ranking
+     * @return values of the ranking, aligned with getOrder(ranking). Shared, must not be modified
+     */
+    public double[] getSortedValues(int ranking) {
+        return sortedValues[ranking];
+    }
+}
@@ -0,0 +1,207 @@
+package rankAggregationMethods;
+
+import java.util.*;
+
+/**
+ * Result of a rank aggregation in primitive form: the aggregated value (score) of every element and the element indices
+ * sorted by ascending score, best first. Equal scores are ordered by element index.
+ * A top-k ranking only holds the k best elements in its order. Element names (SNP ids) are only looked up when asked for,
+ * e.g. while iterating over the entries of the ranking
+ */
+public class SortedRanking implements Iterable<Map.Entry<String, Double>> {
+    // Name of every element, position in the list is the element index
+    private final List<String> names;
+    // Score of every element
+    private final double[] scores;
+    // Element indices sorted by ascending score (only the best k for a top-k ranking)
+    private final int[] order;
+
+    private SortedRanking(List<String> names, double[] scores, int[] order) {
+        this.names = names;
+        this.scores = scores;
+        this.order = order;
+    }
+
+    /**
+     * For rankings that keep their elements in another structure, e.g. one that is updated in place.
+     * They override size, getElement and getScore, the rest of the accessors go through them
+     * @param names name of every element, position in the list is the element index
+     */
+    protected SortedRanking(List<String> names) {
+        this(names, null, null);
+    }
+
+    /**
+     * Sorts all the elements by score
+     * @param names name of every element, position in the list is the element index
+     * @param scores score of every element, used as is (not copied)
+     * @return the sorted ranking of all the elements
+     */
+    public static SortedRanking sort(List<String> names, double[] scores) {
+        if (names.size() != scores.length)
+            throw new IllegalArgumentException("Names and scores must have the same length");
+
+        int[] order = new int[scores.length];
+        for (int element = 0; element < order.length; ++element)
+            order[element] = element;
+        RankAggregationDataTransformation.sortIndicesByValue(order, scores);
+        return new SortedRanking(names, scores, order);
+    }
+
+    /**
+     * Sorts all the elements of a ranking matrix by score
+     * @param rankingMatrix the rankings the elements come from
+     * @param scores aggregated score of every element of the matrix
+     * @return the sorted ranking of all the elements
+     */
+    public static SortedRanking sort(RankingMatrix rankingMatrix, double[] scores) {
+        return sort(rankingMatrix.getElementNames(), scores);
+    }
+
+    /**
+     * Finds the k best elements with a bounded heap, without sorting all of them.
+     * Same as the first k elements of sort(names, scores)
+     * @param names name of every element, position in the list is the element index
+     * @param scores score of every element, used as is (not copied)
+     * @param k number of elements wanted
+     * @return the sorted ranking of the k best elements (all of them if there are fewer)
+     */
+    public static SortedRanking topK(List<String> names, double[] scores, int k) {
+        if (names.size() != scores.length)
+            throw new IllegalArgumentException("Names and scores must have the same length");
+        if (k < 0)
+            throw new IllegalArgumentException("k must not be negative");
+
+        BoundedRanking best = new BoundedRanking(Math.min(k, scores.length));
+        for (int element = 0; element < scores.length; ++element)
+            best.offer(element, scores[element]);
+
+        int[] order = new int[best.size()];
+        best.drainInto(order, new double[order.length]);
+        return new SortedRanking(names, scores, order);
+    }
+
+    /**
+     * Finds the k best elements of a ranking matrix with a bounded heap
+     * @param rankingMatrix the rankings the elements come from
+     * @param scores aggregated score of every element of the matrix
+     * @param k number of elements wanted
+     * @return the sorted ranking of the k best elements
+     */
+    public static SortedRanking topK(RankingMatrix rankingMatrix, double[] scores, int k) {
+        return topK(rankingMatrix.getElementNames(), scores, k);
+    }
+
+    /**
+     * Empties a bounded heap into a ranking of the elements it kept. Only the k elements and their scores are stored, so
+     * no array of the size of all the elements is created
+     * @param names name of every element, position in the list is the element index
+     * @param best the k best elements with their scores, emptied
+     * @return the sorted ranking of the elements of the heap
+     */
+    public static SortedRanking ofBest(List<String> names, BoundedRanking best) {
+        final int[] elements = new int[best.size()];
+        final double[] bestScores = new double[best.size()];
+        best.drainInto(elements, bestScores);
+        return new SortedRanking(names) {
+            @Override
+            public int size() {
+                return elements.length;
+            }
+
+            @Override
+            public int getElement(int position) {
+                return elements[position];
+            }
+
+            @Override
+            public double getScore(int position) {
+                return bestScores[position];
+            }
+        };
+    }
+
+    /**
+     * Wraps elements that are already sorted, without sorting them again
+     * @param names name of every element, position in the list is the element index
+     * @param scores score of every element, used as is (not copied)
+     * @param order indices of the elements of the ranking, sorted by ascending score and equal scores by element index
+     * @return the sorted ranking of the elements of the order
+     */
+    public static SortedRanking ofSortedOrder(List<String> names, double[] scores, int[] order) {
+        return new SortedRanking(names, scores, order);
+    }
+
+    // Class accessors
+
+    /**
+     * @return the number of elements in the ranking (k for a top-k ranking)
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @param position position in the ranking, 0 is the best
+     * @return index of the element at that position
+     */
+    public int getElement(int position) {
+        return order[position];
+    }
+
+    /**
+     * @param position position in the ranking, 0 is the best
+     * @return score of the element at that position
+     */
+    public double getScore(int position) {
+        return scores[order[position]];
+    }
+
+    /**
+     * @param position position in the ranking, 0 is the best
+     * @return name (SNP id) of the element at that position
+     */
+    public String getName(int position) {
+        return names.get(getElement(position));
+    }
+
+    /**
+     * @return the entries (name, score) of the ranking, best first. Names are looked up one at a time, while iterating
+     */
+    @Override
+    public Iterator<Map.Entry<String, Double>> iterator() {
+        return new Iterator<Map.Entry<String, Double>>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < size();
+            }
+
+            @Override
+            public Map.Entry<String, Double> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Map.Entry<String, Double> entry = new AbstractMap.SimpleImmutableEntry<>(getName(position), getScore(position));
+                position++;
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return the ranking as a map with the name as key and the score as value, in ranking order
+     */
+    public Map<String, Double> toMap() {
+        // linked hash maps keep the insertion order
+        Map<String, Double> sortedRankingMap = new LinkedHashMap<>();
+        for (int position = 0; position < size(); ++position)
+            sortedRankingMap.put(getName(position), getScore(position));
+        return sortedRankingMap;
+    }
+}